@@ -0,0 +1,44 @@
+package com.github.rmannibucau.resourcebundle.dev.benchmark;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.Attribute;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Configures the agent of the forked JVM through its MBean so pattern and rules can be JMH parameters
+ * without a fork per combination.
+ */
+final class AgentControl {
+
+    private static final String OBJECT_NAME = "com.github.rmannibucau.resourcebundle.dev:type=ResourceBundleDev";
+
+    private AgentControl() {
+        // no-op
+    }
+
+    static void configure(final String mode, final String pattern, final String includes, final String excludes) {
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            final ObjectName name = new ObjectName(OBJECT_NAME);
+            final boolean registered = server.isRegistered(name);
+            if ("none".equals(mode)) {
+                if (registered) {
+                    throw new IllegalStateException("mode=none but the agent is active, check the fork JVM arguments");
+                }
+                return;
+            }
+            if (!registered) {
+                throw new IllegalStateException("mode=" + mode + " but the agent is not active, check the fork JVM arguments");
+            }
+            server.setAttribute(name, new Attribute("Pattern", pattern));
+            server.setAttribute(name, new Attribute("Includes", includes));
+            server.setAttribute(name, new Attribute("Excludes", excludes));
+            server.setAttribute(name, new Attribute("Active", !"inactive".equals(mode)));
+        } catch (final JMException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
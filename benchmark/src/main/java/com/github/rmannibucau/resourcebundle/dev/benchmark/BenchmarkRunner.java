@@ -0,0 +1,78 @@
+package com.github.rmannibucau.resourcebundle.dev.benchmark;
+
+import static java.util.stream.Collectors.toList;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks without the agent and with the agent in each mode, for each thread count.
+ * JMH command line options (benchmark regex, -f, -wi, -rf...) are forwarded, the specific ones are system properties:
+ *
+ * <ul>
+ *     <li>{@code agent.jar}: agent location, defaults to {@code target/resource-bundle-dev.jar},</li>
+ *     <li>{@code agent.modes}: subset of {@code none,inactive,active,cache}, defaults to all,</li>
+ *     <li>{@code threads}: comma separated thread counts, defaults to 1 and the number of processors.</li>
+ * </ul>
+ *
+ * The GC profiler is always enabled so the allocation rate of each mode is reported.
+ */
+public final class BenchmarkRunner {
+
+    private BenchmarkRunner() {
+        // no-op
+    }
+
+    public static void main(final String[] args) throws RunnerException, CommandLineOptionException {
+        final CommandLineOptions commandLine = new CommandLineOptions(args);
+        final File agent = new File(System.getProperty("agent.jar", "target/resource-bundle-dev.jar"));
+        final List<String> modes = split(System.getProperty("agent.modes", "none,inactive,active,cache"));
+        final List<Integer> threads = split(System.getProperty("threads",
+                "1," + Runtime.getRuntime().availableProcessors())).stream()
+                .map(Integer::parseInt)
+                .distinct()
+                .collect(toList());
+        if (!agent.isFile() && modes.stream().anyMatch(it -> !"none".equals(it))) {
+            throw new IllegalArgumentException("No agent at " + agent.getAbsolutePath() + ", set -Dagent.jar");
+        }
+
+        final Collection<RunResult> results = new ArrayList<>();
+        for (final String mode : modes) {
+            for (final int threadCount : threads) {
+                final ChainedOptionsBuilder options = new OptionsBuilder()
+                        .parent(commandLine)
+                        .addProfiler(GCProfiler.class)
+                        .threads(threadCount)
+                        .param("mode", mode);
+                if (commandLine.getIncludes().isEmpty()) {
+                    options.include(ResourceBundleBenchmark.class.getName());
+                }
+                if ("none".equals(mode) || "inactive".equals(mode)) { // the decoration is not used, don't multiply the runs
+                    options.param("pattern", "[$locale] $value").param("rules", "1");
+                }
+                if (!"none".equals(mode)) {
+                    options.jvmArgsAppend("-javaagent:" + agent.getAbsolutePath() + "=active=true"
+                            + ("cache".equals(mode) ? "|cache=true" : ""));
+                }
+                results.addAll(new Runner(options.build()).run());
+            }
+        }
+        System.out.println("Ran " + results.size() + " benchmark configurations");
+    }
+
+    private static List<String> split(final String value) {
+        return Stream.of(value.split(",")).map(String::trim).filter(it -> !it.isEmpty()).collect(toList());
+    }
+}
@@ -0,0 +1,15 @@
+package com.github.rmannibucau.resourcebundle.dev.benchmark;
+
+import java.util.ListResourceBundle;
+
+// list bundle since a properties bundle has no String[] values
+public class Messages extends ListResourceBundle {
+    @Override
+    protected Object[][] getContents() {
+        return new Object[][] {
+                { "greeting", "Hello" },
+                { "days", new String[] { "Monday", "Tuesday", "Wednesday", "Thursday", "Friday" } },
+                { "root.only", "Only in the root bundle" }
+        };
+    }
+}
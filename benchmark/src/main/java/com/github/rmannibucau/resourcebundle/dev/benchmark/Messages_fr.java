@@ -0,0 +1,13 @@
+package com.github.rmannibucau.resourcebundle.dev.benchmark;
+
+import java.util.ListResourceBundle;
+
+public class Messages_fr extends ListResourceBundle {
+    @Override
+    protected Object[][] getContents() {
+        return new Object[][] {
+                { "greeting", "Bonjour" },
+                { "days", new String[] { "Lundi", "Mardi", "Mercredi", "Jeudi", "Vendredi" } }
+        };
+    }
+}
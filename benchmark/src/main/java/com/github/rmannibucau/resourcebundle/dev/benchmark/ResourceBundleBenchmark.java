@@ -0,0 +1,94 @@
+package com.github.rmannibucau.resourcebundle.dev.benchmark;
+
+import static java.util.stream.Collectors.joining;
+
+import java.util.Locale;
+import java.util.ResourceBundle;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Lookup and getBundle costs, the agent mode and its JVM arguments are set by {@link BenchmarkRunner}.
+ */
+@Fork(2)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+public class ResourceBundleBenchmark {
+
+    static final String BASE_NAME = Messages.class.getName();
+
+    private static final Locale LOCALE = Locale.FRENCH;
+
+    // none (no -javaagent), inactive (agent with Active=false), active, cache (agent started with cache=true)
+    @Param("active")
+    public String mode;
+
+    @Param({ "$value", "[$locale] $value", "$base/$lang: $value" })
+    public String pattern;
+
+    // number of include and exclude rules, the last ones being the bundle package and the default excludes
+    @Param({ "1", "32", "256" })
+    public int rules;
+
+    private ResourceBundle bundle;
+
+    private ClassLoader loader;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        AgentControl.configure(mode, pattern, generatedRules(rules - 1, "com.acme.include") + "com.github.rmannibucau.",
+                generatedRules(rules - 1, "com.acme.exclude") + "java.,sun.,jdk.,oracle.");
+        loader = Thread.currentThread().getContextClassLoader();
+        bundle = ResourceBundle.getBundle(BASE_NAME, LOCALE, loader);
+    }
+
+    @Benchmark
+    public String getString() {
+        return bundle.getString("greeting");
+    }
+
+    @Benchmark
+    public String getStringFromParent() {
+        return bundle.getString("root.only");
+    }
+
+    @Benchmark
+    public String[] getStringArray() {
+        return bundle.getStringArray("days");
+    }
+
+    @Benchmark
+    public ResourceBundle getBundleHit() {
+        return ResourceBundle.getBundle(BASE_NAME, LOCALE, loader);
+    }
+
+    @Benchmark
+    public ResourceBundle getBundleMiss() {
+        ResourceBundle.clearCache(loader);
+        return ResourceBundle.getBundle(BASE_NAME, LOCALE, loader);
+    }
+
+    // prefixes and regexes since they are not compiled the same way
+    private static String generatedRules(final int count, final String prefix) {
+        return IntStream.range(0, count)
+                .mapToObj(i -> i % 2 == 0 ? prefix + i + "." : prefix + i + "\\.[a-z]+Messages")
+                .map(it -> it + ",")
+                .collect(joining());
+    }
+}
@@ -0,0 +1,41 @@
+package com.github.rmannibucau.resourcebundle.dev.jcstress;
+
+import static org.openjdk.jcstress.annotations.Expect.ACCEPTABLE;
+import static org.openjdk.jcstress.annotations.Expect.FORBIDDEN;
+
+import java.util.ResourceBundle;
+
+import org.openjdk.jcstress.annotations.Actor;
+import org.openjdk.jcstress.annotations.Arbiter;
+import org.openjdk.jcstress.annotations.JCStressTest;
+import org.openjdk.jcstress.annotations.Outcome;
+import org.openjdk.jcstress.annotations.State;
+import org.openjdk.jcstress.infra.results.LL_Result;
+
+/**
+ * {@code clearCache()} invalidates the decorated values while a thread looks up a bundle it already holds,
+ * the lookup and the next {@code getBundle} must still be decorated.
+ */
+@JCStressTest
+@Outcome(id = "fr:Bonjour, fr:Bonjour", expect = ACCEPTABLE, desc = "Decorated before and after the invalidation")
+@Outcome(expect = FORBIDDEN, desc = "The invalidation lost the decoration")
+@State
+public class ClearCacheTest {
+
+    private final ResourceBundle bundle = Messages.bundle();
+
+    @Actor
+    public void clear() {
+        ResourceBundle.clearCache();
+    }
+
+    @Actor
+    public void lookup(final LL_Result result) {
+        result.r1 = bundle.getString("greeting");
+    }
+
+    @Arbiter
+    public void reload(final LL_Result result) {
+        result.r2 = Messages.greeting();
+    }
+}
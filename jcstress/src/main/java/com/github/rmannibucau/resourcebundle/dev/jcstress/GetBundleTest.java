@@ -0,0 +1,34 @@
+package com.github.rmannibucau.resourcebundle.dev.jcstress;
+
+import static org.openjdk.jcstress.annotations.Expect.ACCEPTABLE;
+import static org.openjdk.jcstress.annotations.Expect.FORBIDDEN;
+
+import java.util.ResourceBundle;
+
+import org.openjdk.jcstress.annotations.Actor;
+import org.openjdk.jcstress.annotations.JCStressTest;
+import org.openjdk.jcstress.annotations.Outcome;
+import org.openjdk.jcstress.annotations.State;
+import org.openjdk.jcstress.infra.results.LL_Result;
+
+/**
+ * A bundle loaded by a thread after a {@code clearCache()} is looked up by another thread through the JDK cache:
+ * its agent state must be visible with it, an undecorated value means the lookup did not see it.
+ */
+@JCStressTest
+@Outcome(id = "fr:Bonjour, fr:Bonjour", expect = ACCEPTABLE, desc = "Both threads see the bundle state")
+@Outcome(expect = FORBIDDEN, desc = "A lookup missed the state of a freshly published bundle")
+@State
+public class GetBundleTest {
+
+    @Actor
+    public void loader(final LL_Result result) {
+        ResourceBundle.clearCache();
+        result.r1 = Messages.greeting();
+    }
+
+    @Actor
+    public void reader(final LL_Result result) {
+        result.r2 = Messages.greeting();
+    }
+}
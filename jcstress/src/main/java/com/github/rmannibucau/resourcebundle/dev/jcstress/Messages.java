@@ -0,0 +1,50 @@
+package com.github.rmannibucau.resourcebundle.dev.jcstress;
+
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.ResourceBundle;
+
+import javax.management.Attribute;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * The bundle the tests look up, {@code greeting} is {@code fr:Bonjour} when decorated with the runner configuration.
+ */
+final class Messages {
+
+    static final String DECORATED = "fr:Bonjour";
+
+    private static final String BASE_NAME = "stress.messages";
+
+    private static final ObjectName AGENT;
+
+    static {
+        try {
+            AGENT = new ObjectName("com.github.rmannibucau.resourcebundle.dev:type=ResourceBundleDev");
+        } catch (final JMException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private Messages() {
+        // no-op
+    }
+
+    static ResourceBundle bundle() {
+        return ResourceBundle.getBundle(BASE_NAME, Locale.FRENCH);
+    }
+
+    static String greeting() {
+        return bundle().getString("greeting");
+    }
+
+    // same path as a JMX client: the formatter is replaced and the decorated values invalidated
+    static void setPattern(final String pattern) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().setAttribute(AGENT, new Attribute("Pattern", pattern));
+        } catch (final JMException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.github.rmannibucau.resourcebundle.dev.jcstress;
+
+import static org.openjdk.jcstress.annotations.Expect.ACCEPTABLE;
+import static org.openjdk.jcstress.annotations.Expect.FORBIDDEN;
+
+import org.openjdk.jcstress.annotations.Actor;
+import org.openjdk.jcstress.annotations.Arbiter;
+import org.openjdk.jcstress.annotations.JCStressTest;
+import org.openjdk.jcstress.annotations.Outcome;
+import org.openjdk.jcstress.annotations.State;
+import org.openjdk.jcstress.infra.results.LL_Result;
+
+/**
+ * The pattern changes while a thread fills the decorated values cache ({@code cache=true}):
+ * once the reconfiguration returned no thread may read a value decorated with the previous pattern.
+ * The configuration is global, jcstress creates the states of a batch before running its actors.
+ */
+@JCStressTest
+@Outcome(id = "old:Bonjour, new:Bonjour", expect = ACCEPTABLE, desc = "Lookup before the reconfiguration")
+@Outcome(id = "new:Bonjour, new:Bonjour", expect = ACCEPTABLE, desc = "Lookup after the reconfiguration")
+@Outcome(expect = FORBIDDEN, desc = "A value of the previous pattern survived the reconfiguration")
+@State
+public class ReconfigurationTest {
+
+    public ReconfigurationTest() {
+        Messages.setPattern("old:$value");
+        Messages.greeting(); // cached
+    }
+
+    @Actor
+    public void reconfigure() {
+        Messages.setPattern("new:$value");
+    }
+
+    @Actor
+    public void lookup(final LL_Result result) {
+        result.r1 = Messages.greeting();
+    }
+
+    @Arbiter
+    public void after(final LL_Result result) {
+        result.r2 = Messages.greeting();
+    }
+}
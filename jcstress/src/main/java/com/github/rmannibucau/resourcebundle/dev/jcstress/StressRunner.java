@@ -0,0 +1,38 @@
+package com.github.rmannibucau.resourcebundle.dev.jcstress;
+
+import static java.util.Arrays.asList;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.openjdk.jcstress.Main;
+
+/**
+ * Runs the jcstress tests with the agent in the forked JVMs, jcstress command line options ({@code -t}, {@code -m},
+ * {@code -time}...) are forwarded, the specific ones are system properties:
+ *
+ * <ul>
+ *     <li>{@code agent.jar}: agent location, defaults to {@code target/resource-bundle-dev.jar},</li>
+ *     <li>{@code agent.args}: agent configuration, the outcomes of the tests expect the default one.</li>
+ * </ul>
+ */
+public final class StressRunner {
+
+    static final String AGENT_ARGS = "active=true|includes=stress.|cache=true|pattern=$locale:$value";
+
+    private StressRunner() {
+        // no-op
+    }
+
+    public static void main(final String[] args) throws Exception {
+        final File agent = new File(System.getProperty("agent.jar", "target/resource-bundle-dev.jar"));
+        if (!agent.isFile()) {
+            throw new IllegalArgumentException("No agent at " + agent.getAbsolutePath() + ", set -Dagent.jar");
+        }
+        final List<String> command = new ArrayList<>(asList(args));
+        command.add("-jvmArgsPrepend");
+        command.add("-javaagent:" + agent.getAbsolutePath() + '=' + System.getProperty("agent.args", AGENT_ARGS));
+        Main.main(command.toArray(new String[0]));
+    }
+}
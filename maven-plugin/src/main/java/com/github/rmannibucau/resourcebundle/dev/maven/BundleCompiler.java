@@ -0,0 +1,198 @@
+package com.github.rmannibucau.resourcebundle.dev.maven;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Comparator.comparingInt;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.github.rmannibucau.resourcebundle.dev.runtime.BinaryBundle;
+
+/**
+ * Writes the {@link BinaryBundle} format of all the locales of a base name,
+ * see its documentation for the layout.
+ */
+final class BundleCompiler {
+
+    // hash and displace needs a few keys per bucket to stay compact and a few to find displacements quickly
+    private static final int KEYS_PER_BUCKET = 2;
+
+    private static final int MAX_DISPLACEMENT = 1 << 24;
+
+    private final Map<String, Integer> strings = new LinkedHashMap<>();
+
+    private int stringBytes;
+
+    private BundleCompiler() {
+        // no-op
+    }
+
+    /**
+     * @param locales the entries per locale name (the file name suffix, empty for the root bundle).
+     * @return the binary bundle content.
+     */
+    static byte[] compile(final Map<String, Map<String, String>> locales) throws IOException {
+        return new BundleCompiler().doCompile(locales);
+    }
+
+    private byte[] doCompile(final Map<String, Map<String, String>> locales) throws IOException {
+        final List<int[]> localeIds = new ArrayList<>(locales.size());
+        final List<Section> sections = new ArrayList<>(locales.size());
+        for (final Map.Entry<String, Map<String, String>> locale : locales.entrySet()) {
+            localeIds.add(new int[] { id(locale.getKey()) });
+            sections.add(new Section(locale.getValue()));
+        }
+        for (final Section section : sections) {
+            section.index();
+        }
+
+        final int headerSize = 16 + locales.size() * 8;
+        final int stringsStart = headerSize + (strings.size() + 1) * 4;
+        int sectionOffset = stringsStart + stringBytes;
+
+        final ByteArrayOutputStream buffer = new ByteArrayOutputStream(sectionOffset * 2);
+        try (final DataOutputStream out = new DataOutputStream(buffer)) {
+            out.writeInt(BinaryBundle.MAGIC);
+            out.writeInt(BinaryBundle.VERSION);
+            out.writeInt(locales.size());
+            out.writeInt(strings.size());
+            for (int i = 0; i < localeIds.size(); i++) {
+                out.writeInt(localeIds.get(i)[0]);
+                out.writeInt(sectionOffset);
+                sectionOffset += sections.get(i).byteSize();
+            }
+            final List<byte[]> encoded = new ArrayList<>(strings.size());
+            int offset = stringsStart;
+            for (final String string : strings.keySet()) {
+                final byte[] bytes = string.getBytes(UTF_8);
+                encoded.add(bytes);
+                out.writeInt(offset);
+                offset += bytes.length;
+            }
+            out.writeInt(offset);
+            for (final byte[] bytes : encoded) {
+                out.write(bytes);
+            }
+            for (final Section section : sections) {
+                section.write(out);
+            }
+        }
+        return buffer.toByteArray();
+    }
+
+    // keys and values of all the locales share the table so a value repeated across locales is stored once
+    private int id(final String value) {
+        return strings.computeIfAbsent(value, it -> {
+            stringBytes += it.getBytes(UTF_8).length;
+            return strings.size();
+        });
+    }
+
+    private final class Section {
+
+        private final List<String> keys;
+
+        private final int[] keyIds;
+
+        private final int[] valueIds;
+
+        private final int buckets;
+
+        private final int[] displacements;
+
+        private final int[] slots; // entry index per slot
+
+        private Section(final Map<String, String> entries) {
+            keys = new ArrayList<>(entries.keySet());
+            keyIds = new int[keys.size()];
+            valueIds = new int[keys.size()];
+            for (int i = 0; i < keys.size(); i++) {
+                keyIds[i] = id(keys.get(i));
+                valueIds[i] = id(entries.get(keys.get(i)));
+            }
+            buckets = Math.max(1, (keys.size() + KEYS_PER_BUCKET - 1) / KEYS_PER_BUCKET);
+            displacements = new int[buckets];
+            slots = new int[keys.size()];
+        }
+
+        private int byteSize() {
+            return 8 + buckets * 4 + keys.size() * 8;
+        }
+
+        // biggest buckets first, each one gets the first displacement sending its keys to free slots
+        private void index() {
+            final int size = keys.size();
+            if (size == 0) {
+                return;
+            }
+            final List<List<Integer>> byBucket = new ArrayList<>(buckets);
+            for (int i = 0; i < buckets; i++) {
+                byBucket.add(new ArrayList<>());
+            }
+            for (int i = 0; i < size; i++) {
+                byBucket.get(BinaryBundle.hash(keys.get(i), 0) % buckets).add(i);
+            }
+            final List<Integer> order = new ArrayList<>(buckets);
+            for (int i = 0; i < buckets; i++) {
+                order.add(i);
+            }
+            order.sort(comparingInt((Integer it) -> byBucket.get(it).size()).reversed());
+
+            final boolean[] used = new boolean[size];
+            for (final int bucket : order) {
+                final List<Integer> entries = byBucket.get(bucket);
+                if (entries.isEmpty()) {
+                    break;
+                }
+                final int[] candidates = new int[entries.size()];
+                int displacement = 1;
+                while (!tryPlace(entries, displacement, used, candidates)) {
+                    if (++displacement == MAX_DISPLACEMENT) {
+                        throw new IllegalStateException("Can't find a perfect hash for " + keys);
+                    }
+                }
+                displacements[bucket] = displacement;
+                for (int i = 0; i < candidates.length; i++) {
+                    used[candidates[i]] = true;
+                    slots[candidates[i]] = entries.get(i);
+                }
+            }
+        }
+
+        private boolean tryPlace(final List<Integer> entries, final int displacement, final boolean[] used,
+                                 final int[] candidates) {
+            for (int i = 0; i < candidates.length; i++) {
+                final int slot = BinaryBundle.hash(keys.get(entries.get(i)), displacement) % keys.size();
+                if (used[slot]) {
+                    return false;
+                }
+                for (int j = 0; j < i; j++) {
+                    if (candidates[j] == slot) {
+                        return false;
+                    }
+                }
+                candidates[i] = slot;
+            }
+            return true;
+        }
+
+        private void write(final DataOutputStream out) throws IOException {
+            out.writeInt(keys.size());
+            out.writeInt(buckets);
+            for (final int displacement : displacements) {
+                out.writeInt(displacement);
+            }
+            for (final int entry : slots) {
+                out.writeInt(keyIds[entry]);
+            }
+            for (final int entry : slots) {
+                out.writeInt(valueIds[entry]);
+            }
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.github.rmannibucau.resourcebundle.dev.maven;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Comparator.comparingInt;
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toSet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+import com.github.rmannibucau.resourcebundle.dev.runtime.BinaryBundle;
+
+/**
+ * Compiles all the {@code .properties} of each base name of the output directory to a {@code <base>.rbd} file
+ * next to them, the agent loads it with {@code binaryBundles=true}.
+ * The properties are kept so the application still works without the agent.
+ */
+@Mojo(name = "compile-bundles", defaultPhase = LifecyclePhase.PROCESS_CLASSES, threadSafe = true)
+public class CompileBundlesMojo extends AbstractMojo {
+
+    // language, optional script/country and variant as produced by Control.toBundleName
+    private static final Pattern LOCALE_SUFFIX = Pattern.compile("[a-z]{2,8}(_([A-Z][a-z]{3}_?)?([A-Z]{2}|[0-9]{3})?(_.+)?)?");
+
+    // a lowercase suffix is a locale only for a known language (ISO 639 alpha-2 or alpha-3), messages_list is not
+    private static final Set<String> LANGUAGES = Stream.of(Locale.getISOLanguages())
+            .flatMap(it -> Stream.of(it, new Locale(it).getISO3Language()))
+            .collect(toSet());
+
+    @Parameter(defaultValue = "${project.build.outputDirectory}")
+    private File directory;
+
+    /**
+     * Base names (dotted) to compile, by default all the bundles of the directory: the locale is guessed from the
+     * file name suffix (ISO 639 language, optional script, country and variant) when the root bundle exists so bundles
+     * without root bundle or with other suffixes must be listed explicitly.
+     */
+    @Parameter
+    private List<String> baseNames;
+
+    /**
+     * Encoding of the properties, by default UTF-8 falling back on ISO-8859-1 when the file is not valid UTF-8 as the
+     * java 9+ {@code PropertyResourceBundle} and the agent bundles.
+     */
+    @Parameter(property = "resource-bundle-dev.encoding")
+    private String encoding;
+
+    @Parameter(property = "resource-bundle-dev.skip", defaultValue = "false")
+    private boolean skip;
+
+    @Override
+    public void execute() throws MojoExecutionException {
+        if (skip || !directory.isDirectory()) {
+            getLog().info("Skipping bundle compilation");
+            return;
+        }
+        final Path root = directory.toPath();
+        final Collection<Path> files;
+        try (final Stream<Path> walk = Files.walk(root)) {
+            files = walk.filter(it -> it.getFileName().toString().endsWith(".properties")).collect(toList());
+        } catch (final IOException e) {
+            throw new MojoExecutionException(e.getMessage(), e);
+        }
+
+        // base name -> locale suffix -> entries
+        final Map<String, Map<String, Map<String, String>>> bundles = new TreeMap<>();
+        for (final Path file : files) {
+            final String relative = root.relativize(file).toString().replace(File.separatorChar, '/');
+            final String name = relative.substring(0, relative.length() - ".properties".length()).replace('/', '.');
+            final String baseName = baseName(name, root, files);
+            if (baseName == null) {
+                continue;
+            }
+            final String locale = name.length() == baseName.length() ? "" : name.substring(baseName.length() + 1);
+            bundles.computeIfAbsent(baseName, it -> new TreeMap<>()).put(locale, read(file));
+        }
+
+        for (final Map.Entry<String, Map<String, Map<String, String>>> bundle : bundles.entrySet()) {
+            final Path target = root.resolve(bundle.getKey().replace('.', '/') + '.' + BinaryBundle.EXTENSION);
+            try {
+                final byte[] content = BundleCompiler.compile(bundle.getValue());
+                Files.write(target, content);
+                getLog().info("Compiled " + bundle.getKey() + " " + bundle.getValue().keySet() + " to " + target
+                        + " (" + content.length + " bytes)");
+            } catch (final IOException | IllegalStateException e) {
+                throw new MojoExecutionException("Can't compile " + bundle.getKey() + ": " + e.getMessage(), e);
+            }
+        }
+    }
+
+    private String baseName(final String name, final Path root, final Collection<Path> files) {
+        if (baseNames != null) {
+            return baseNames.stream()
+                    .filter(it -> name.equals(it) || name.startsWith(it + '_'))
+                    .max(comparingInt(String::length))
+                    .orElse(null);
+        }
+        // the shortest base name with a locale looking suffix and a root bundle, else the file is a root bundle
+        final String simpleName = name.substring(name.lastIndexOf('.') + 1);
+        final String packageName = name.substring(0, name.length() - simpleName.length());
+        for (int i = simpleName.indexOf('_'); i > 0; i = simpleName.indexOf('_', i + 1)) {
+            final String candidate = packageName + simpleName.substring(0, i);
+            if (isLocaleSuffix(simpleName.substring(i + 1))
+                    && files.contains(root.resolve(candidate.replace('.', '/') + ".properties"))) {
+                return candidate;
+            }
+        }
+        return name;
+    }
+
+    static boolean isLocaleSuffix(final String suffix) {
+        final int language = suffix.indexOf('_');
+        return LOCALE_SUFFIX.matcher(suffix).matches()
+                && LANGUAGES.contains(language < 0 ? suffix : suffix.substring(0, language));
+    }
+
+    static String decode(final byte[] content, final String encoding) {
+        if (encoding != null) {
+            return new String(content, Charset.forName(encoding));
+        }
+        try {
+            return UTF_8.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPORT)
+                    .onUnmappableCharacter(CodingErrorAction.REPORT)
+                    .decode(ByteBuffer.wrap(content))
+                    .toString();
+        } catch (final CharacterCodingException e) {
+            return new String(content, ISO_8859_1);
+        }
+    }
+
+    private Map<String, String> read(final Path file) throws MojoExecutionException {
+        final Properties properties = new Properties();
+        try (final StringReader reader = new StringReader(decode(Files.readAllBytes(file), encoding))) {
+            properties.load(reader);
+        } catch (final IOException e) {
+            throw new MojoExecutionException("Can't read " + file + ": " + e.getMessage(), e);
+        }
+        final Map<String, String> entries = new TreeMap<>();
+        properties.stringPropertyNames().forEach(key -> entries.put(key, properties.getProperty(key)));
+        return entries;
+    }
+}
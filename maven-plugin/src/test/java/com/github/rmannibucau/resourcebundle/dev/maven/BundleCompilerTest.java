@@ -0,0 +1,77 @@
+package com.github.rmannibucau.resourcebundle.dev.maven;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.Test;
+
+import com.github.rmannibucau.resourcebundle.dev.runtime.BinaryBundle;
+
+class BundleCompilerTest {
+
+    @Test
+    void roundTrip() throws IOException {
+        for (final int size : new int[]{0, 1, 2, 3, 7, 64, 1000, 20000}) {
+            final Map<String, Map<String, String>> locales = new TreeMap<>();
+            locales.put("", entries(size, "root"));
+            locales.put("fr", entries(size / 2, "fr"));
+            locales.put("fr_CA", new HashMap<>());
+            assertRoundTrip(locales);
+        }
+    }
+
+    @Test
+    void nonBmp() throws IOException { // surrogate pairs in keys and values, the hash works on chars
+        final Map<String, String> entries = new HashMap<>();
+        entries.put("😀", "smile 😀");
+        entries.put("😀😁", "two");
+        entries.put("𐐷.key", "été €");
+        entries.put("", "empty key");
+        entries.put("empty value", "");
+        for (int i = 0; i < 500; i++) {
+            entries.put("\ud83d" + (char) ('\ude00' + i % 64) + '.' + i, "𝄞" + i);
+        }
+        assertRoundTrip(singleLocale(entries));
+    }
+
+    @Test
+    void missingLocale() throws IOException {
+        final byte[] content = BundleCompiler.compile(singleLocale(entries(3, "root")));
+        assertNull(BinaryBundle.open(ByteBuffer.wrap(content), "de"));
+    }
+
+    private static void assertRoundTrip(final Map<String, Map<String, String>> locales) throws IOException {
+        final ByteBuffer content = ByteBuffer.wrap(BundleCompiler.compile(locales));
+        for (final Map.Entry<String, Map<String, String>> locale : locales.entrySet()) {
+            final BinaryBundle bundle = BinaryBundle.open(content, locale.getKey());
+            assertNotNull(bundle, locale.getKey());
+            assertEquals(locale.getValue().keySet(), bundle.keySet(), locale.getKey());
+            for (final Map.Entry<String, String> entry : locale.getValue().entrySet()) {
+                assertEquals(entry.getValue(), bundle.getObject(entry.getKey()), entry.getKey());
+            }
+            assertFalse(bundle.containsKey("missing." + locale.getKey()));
+        }
+    }
+
+    private static Map<String, Map<String, String>> singleLocale(final Map<String, String> entries) {
+        final Map<String, Map<String, String>> locales = new TreeMap<>();
+        locales.put("", entries);
+        return locales;
+    }
+
+    private static Map<String, String> entries(final int size, final String prefix) {
+        final Map<String, String> entries = new HashMap<>();
+        for (int i = 0; i < size; i++) {
+            entries.put("key." + i, i % 5 == 0 ? "shared" : prefix + " value " + i); // shared strings are deduplicated
+        }
+        return entries;
+    }
+}
@@ -0,0 +1,45 @@
+package com.github.rmannibucau.resourcebundle.dev.maven;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class CompileBundlesMojoTest {
+
+    @Test
+    void localeSuffixes() {
+        assertTrue(CompileBundlesMojo.isLocaleSuffix("fr"));
+        assertTrue(CompileBundlesMojo.isLocaleSuffix("fr_CA"));
+        assertTrue(CompileBundlesMojo.isLocaleSuffix("zh_Hant_TW"));
+        assertTrue(CompileBundlesMojo.isLocaleSuffix("es_419"));
+        assertTrue(CompileBundlesMojo.isLocaleSuffix("de_DE_POSIX"));
+        assertTrue(CompileBundlesMojo.isLocaleSuffix("fra"));
+        assertFalse(CompileBundlesMojo.isLocaleSuffix("list"));
+        assertFalse(CompileBundlesMojo.isLocaleSuffix("admin"));
+        assertFalse(CompileBundlesMojo.isLocaleSuffix("xx_FR"));
+        assertFalse(CompileBundlesMojo.isLocaleSuffix("FR"));
+    }
+
+    @Test
+    void utf8ByDefault() {
+        final String content = "key=été € 😀";
+        assertEquals(content, CompileBundlesMojo.decode(content.getBytes(UTF_8), null));
+    }
+
+    @Test
+    void latin1Fallback() {
+        final String content = "key=café crème";
+        assertEquals(content, CompileBundlesMojo.decode(content.getBytes(ISO_8859_1), null));
+    }
+
+    @Test
+    void explicitEncoding() {
+        final String content = "key=été";
+        assertEquals(content, CompileBundlesMojo.decode(content.getBytes(ISO_8859_1), "ISO-8859-1"));
+        assertEquals("key=Ã©tÃ©", CompileBundlesMojo.decode(content.getBytes(UTF_8), "ISO-8859-1"));
+    }
+}
@@ -0,0 +1,281 @@
+package com.github.rmannibucau.resourcebundle.dev;
+
+import static com.github.rmannibucau.resourcebundle.dev.ResourceBundleDevAgent.splitList;
+import static java.util.stream.Collectors.toList;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Paths;
+import java.util.Collection;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import com.github.rmannibucau.resourcebundle.dev.runtime.BaseNameMatcher;
+import com.github.rmannibucau.resourcebundle.dev.runtime.BundleWatcher;
+import com.github.rmannibucau.resourcebundle.dev.runtime.CallSiteSampler;
+import com.github.rmannibucau.resourcebundle.dev.runtime.ClassLoaderRegistry;
+import com.github.rmannibucau.resourcebundle.dev.runtime.Deduplication;
+import com.github.rmannibucau.resourcebundle.dev.runtime.DecorationRules;
+import com.github.rmannibucau.resourcebundle.dev.runtime.Decorations;
+import com.github.rmannibucau.resourcebundle.dev.runtime.DevControl;
+import com.github.rmannibucau.resourcebundle.dev.runtime.DevState;
+import com.github.rmannibucau.resourcebundle.dev.runtime.Fallbacks;
+import com.github.rmannibucau.resourcebundle.dev.runtime.FlightRecorderEvents;
+import com.github.rmannibucau.resourcebundle.dev.runtime.IncludeFilter;
+import com.github.rmannibucau.resourcebundle.dev.runtime.MergedBundles;
+import com.github.rmannibucau.resourcebundle.dev.runtime.MessageFormats;
+import com.github.rmannibucau.resourcebundle.dev.runtime.PatternTemplate;
+import com.github.rmannibucau.resourcebundle.dev.runtime.PseudoLocalizer;
+import com.github.rmannibucau.resourcebundle.dev.runtime.UsageCounters;
+import com.github.rmannibucau.resourcebundle.dev.runtime.ValueFormatter;
+
+/**
+ * Only place touching the runtime package from the agent entry points, it must not be loaded before
+ * {@link BootstrapRuntime#install(java.lang.instrument.Instrumentation)} otherwise the system loader
+ * would define its own copy of the runtime classes.
+ */
+final class AgentRuntime {
+    private AgentRuntime() {
+        // no-op
+    }
+
+    /**
+     * @param pseudo null to decorate with the pattern, else the pseudo-localization expansion percentage.
+     * @param pseudoBrackets the pseudo-localization prefix and suffix separated by a comma.
+     */
+    static void configure(final String pattern, final String pseudo, final String pseudoBrackets,
+                          final String includes, final String excludes, final boolean cache) {
+        IncludeFilter.configure(splitList(includes), splitList(excludes));
+        Decorations.configure(formatter(pattern, pseudo, pseudoBrackets), cache);
+        DevState.invalidateCaches();
+    }
+
+    private static ValueFormatter formatter(final String pattern, final String pseudo, final String pseudoBrackets) {
+        if (pseudo == null) {
+            return PatternTemplate.parse(pattern);
+        }
+        final int separator = pseudoBrackets.indexOf(',');
+        if (separator < 0) {
+            throw new IllegalArgumentException("pseudoBrackets must be <prefix>,<suffix>: " + pseudoBrackets);
+        }
+        return new PseudoLocalizer(Integer.parseInt(pseudo.trim()),
+                pseudoBrackets.substring(0, separator), pseudoBrackets.substring(separator + 1));
+    }
+
+    static boolean isRegex(final String rule) {
+        return BaseNameMatcher.isRegex(rule);
+    }
+
+    static void setActive(final boolean active) {
+        DevState.setActive(active);
+    }
+
+    static void setScoped(final boolean scoped) {
+        DevState.setScoped(scoped);
+    }
+
+    static void setMappedProperties(final boolean mappedProperties) {
+        DevControl.setMappedProperties(mappedProperties);
+    }
+
+    static void setBinaryBundles(final boolean binaryBundles) {
+        DevControl.setBinaryBundles(binaryBundles);
+    }
+
+    static void configureRules(final String file) {
+        try {
+            Log.info("Loaded " + DecorationRules.configure(Paths.get(file)) + " decoration rules from " + file);
+        } catch (final IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static void reset() {
+        DevState.setActive(false);
+        Decorations.configure(null, false);
+        DecorationRules.reset();
+    }
+
+    static void startUsageTracking(final String file, final long intervalSeconds) {
+        UsageCounters.start(Paths.get(file), intervalSeconds);
+        Log.info("Tracking key usage in " + file + " every " + intervalSeconds + "s");
+    }
+
+    static String getUsageSnapshotFile() {
+        return UsageCounters.isEnabled() ? UsageCounters.getSnapshotFile().toString() : null;
+    }
+
+    static void writeUsageSnapshot() {
+        try {
+            UsageCounters.write();
+        } catch (final IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static void startFallbackTracking(final String file) {
+        Fallbacks.start(Paths.get(file));
+        Log.info("Tracking parent chain resolutions in " + file);
+    }
+
+    static void startCallSiteSampling(final String file, final int rate, final int size) {
+        CallSiteSampler.start(Paths.get(file), rate, size);
+        Log.info("Sampling one bundle lookup every " + rate + " to attribute it to its caller, top " + size
+                + " call sites reported in " + file);
+    }
+
+    static String getCallSiteReportFile() {
+        return CallSiteSampler.isEnabled() ? CallSiteSampler.getReportFile().toString() : null;
+    }
+
+    static void writeCallSiteReport() {
+        try {
+            CallSiteSampler.write();
+        } catch (final IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static long getCallSiteSamples() {
+        return CallSiteSampler.getSamples();
+    }
+
+    static String[] getTopCallSites() {
+        return CallSiteSampler.isEnabled() ? CallSiteSampler.top() : new String[0];
+    }
+
+    static void startMergedBundles() {
+        MergedBundles.start();
+        Log.info("Merging the parent chain of the included bundles in one lookup table");
+    }
+
+    static long getMergedTables() {
+        return MergedBundles.getTables();
+    }
+
+    static long getMergedEntries() {
+        return MergedBundles.getEntries();
+    }
+
+    static void startMessageFormatCache() {
+        MessageFormats.start();
+        Log.info("Caching the parsed MessageFormat of the decorated values");
+    }
+
+    static long getMessageFormatCacheHits() {
+        return MessageFormats.getHits();
+    }
+
+    static long getMessageFormatParses() {
+        return MessageFormats.getParses();
+    }
+
+    static void startClassLoaderTracking() {
+        ClassLoaderRegistry.start();
+        Log.info("Tracking bundles per class loader");
+    }
+
+    static boolean isClassLoaderTracking() {
+        return ClassLoaderRegistry.isEnabled();
+    }
+
+    static long getTrackedClassLoaders() {
+        return ClassLoaderRegistry.getTrackedClassLoaders();
+    }
+
+    static long getUndeployedClassLoaders() {
+        return ClassLoaderRegistry.getUndeployedClassLoaders();
+    }
+
+    static long getSuspectedClassLoaders() {
+        return ClassLoaderRegistry.getSuspectedClassLoaders();
+    }
+
+    static long getLeakedBundles() {
+        return ClassLoaderRegistry.getLeakedBundles();
+    }
+
+    static String[] getClassLoaderReport() {
+        return ClassLoaderRegistry.report();
+    }
+
+    static long evictUndeployedBundles() {
+        final long evicted = ClassLoaderRegistry.evictUndeployed();
+        Log.info("Evicted " + evicted + " bundles of undeployed class loaders");
+        return evicted;
+    }
+
+    static void startDeduplication(final String file) {
+        Deduplication.start(Paths.get(file));
+        Log.info("Deduplicating bundle values, footprint reported in " + file);
+    }
+
+    static String getDeduplicationReportFile() {
+        return Deduplication.isEnabled() ? Deduplication.getReportFile().toString() : null;
+    }
+
+    static long getDeduplicatedBytes() {
+        return Deduplication.getSavedBytes();
+    }
+
+    static void writeDeduplicationReport() {
+        try {
+            Deduplication.write();
+        } catch (final IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static void startFlightRecorderEvents() {
+        if (FlightRecorderEvents.isAvailable()) {
+            FlightRecorderEvents.start();
+        } else {
+            Log.info("Flight recorder not available, no bundle event");
+        }
+    }
+
+    static void startWatching(final Collection<String> directories, final long delayMillis) {
+        try {
+            BundleWatcher.start(directories.stream().map(Paths::get).collect(toList()), delayMillis);
+        } catch (final IOException e) {
+            throw new IllegalStateException(e);
+        }
+        Log.info("Watching bundles of " + directories + ", checked every " + delayMillis + "ms");
+    }
+
+    static long getReloadBatches() {
+        return BundleWatcher.getBatches();
+    }
+
+    static String[] getLastReloadBatch() {
+        return BundleWatcher.getLastBatch();
+    }
+
+    static String getFallbackReportFile() {
+        return Fallbacks.isEnabled() ? Fallbacks.getReportFile().toString() : null;
+    }
+
+    static void writeFallbackReport() {
+        try {
+            Fallbacks.write();
+        } catch (final IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static void registerMBean() {
+        try {
+            final ObjectName name = new ObjectName(ResourceBundleDev.OBJECT_NAME);
+            if (!ManagementFactory.getPlatformMBeanServer().isRegistered(name)) {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(new ResourceBundleDev(), name);
+            }
+        } catch (final JMException e) {
+            Log.info("Can't register " + ResourceBundleDev.OBJECT_NAME + ": " + e.getMessage());
+        }
+    }
+
+    static void logCacheStatistics() {
+        Log.info("ResourceBundle cache: hits=" + DevState.getCacheHits() + ", misses=" + DevState.getCacheMisses());
+    }
+}
@@ -0,0 +1,120 @@
+package com.github.rmannibucau.resourcebundle.dev;
+
+import static java.util.Collections.emptyMap;
+import static java.util.Collections.emptySet;
+import static java.util.Collections.singleton;
+import static java.util.Collections.singletonMap;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.instrument.Instrumentation;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Enumeration;
+import java.util.Map;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.stream.Stream;
+
+/**
+ * The instrumented {@code java.util.ResourceBundle} is loaded by the bootstrap loader so it can only see
+ * classes of the runtime package if they are in the bootstrap class path.
+ * Only this package is extracted to a dedicated jar to not split the agent classes between two loaders.
+ */
+final class BootstrapRuntime {
+
+    static final String RUNTIME_PACKAGE = "com/github/rmannibucau/resourcebundle/dev/runtime/";
+
+    private BootstrapRuntime() {
+        // no-op
+    }
+
+    static void install(final Instrumentation instrumentation) {
+        try {
+            final Path jar = Files.createTempFile("resource-bundle-dev-runtime", ".jar");
+            jar.toFile().deleteOnExit();
+            try (final JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar))) {
+                final Path location = Paths.get(BootstrapRuntime.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+                if (Files.isDirectory(location)) {
+                    copyFromDirectory(location, out);
+                } else {
+                    copyFromJar(location.toFile(), out);
+                }
+            }
+            instrumentation.appendToBootstrapClassLoaderSearch(new JarFile(jar.toFile()));
+            linkJavaBase(instrumentation);
+        } catch (final IOException | URISyntaxException e) {
+            throw new IllegalStateException("Can't install agent runtime", e);
+        }
+    }
+
+    /**
+     * Java 9+: the runtime is in the unnamed module of the bootstrap loader which java.base doesn't read,
+     * the invokedynamic instructions of ResourceBundle couldn't resolve the Linker.
+     * java.util is opened to the runtime as well for the deduplication which replaces values of the JDK bundles.
+     * Reflection since the agent targets java 8.
+     */
+    private static void linkJavaBase(final Instrumentation instrumentation) {
+        final Method getModule;
+        try {
+            getModule = Class.class.getMethod("getModule");
+        } catch (final NoSuchMethodException e) {
+            return; // java 8, no module
+        }
+        try {
+            final Object javaBase = getModule.invoke(Object.class);
+            final Object runtime = getModule.invoke(Class.forName(RUNTIME_PACKAGE.replace('/', '.') + "Linker", false, null));
+            final Class<?> moduleType = getModule.getReturnType();
+            Instrumentation.class
+                    .getMethod("redefineModule", moduleType, Set.class, Map.class, Map.class, Set.class, Map.class)
+                    .invoke(instrumentation, javaBase, singleton(runtime), emptyMap(),
+                            singletonMap("java.util", singleton(runtime)), emptySet(), emptyMap());
+        } catch (final ClassNotFoundException | NoSuchMethodException | IllegalAccessException e) {
+            throw new IllegalStateException("Can't link java.base and the agent runtime", e);
+        } catch (final InvocationTargetException e) {
+            throw new IllegalStateException("Can't link java.base and the agent runtime", e.getTargetException());
+        }
+    }
+
+    private static void copyFromJar(final File location, final JarOutputStream out) throws IOException {
+        try (final JarFile agent = new JarFile(location)) {
+            final Enumeration<JarEntry> entries = agent.entries();
+            while (entries.hasMoreElements()) {
+                final JarEntry entry = entries.nextElement();
+                if (!entry.isDirectory() && entry.getName().startsWith(RUNTIME_PACKAGE)) {
+                    try (final InputStream in = agent.getInputStream(entry)) {
+                        copy(entry.getName(), in, out);
+                    }
+                }
+            }
+        }
+    }
+
+    private static void copyFromDirectory(final Path location, final JarOutputStream out) throws IOException {
+        final Path runtime = location.resolve(RUNTIME_PACKAGE);
+        try (final Stream<Path> files = Files.list(runtime)) {
+            for (final Path file : (Iterable<Path>) files::iterator) {
+                try (final InputStream in = Files.newInputStream(file)) {
+                    copy(RUNTIME_PACKAGE + file.getFileName(), in, out);
+                }
+            }
+        }
+    }
+
+    private static void copy(final String name, final InputStream in, final JarOutputStream out) throws IOException {
+        out.putNextEntry(new JarEntry(name));
+        final byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) >= 0) {
+            out.write(buffer, 0, read);
+        }
+        out.closeEntry();
+    }
+}
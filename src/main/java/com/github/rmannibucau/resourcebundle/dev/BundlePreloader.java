@@ -0,0 +1,57 @@
+package com.github.rmannibucau.resourcebundle.dev;
+
+import static java.util.stream.Collectors.toList;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.MissingResourceException;
+import java.util.ResourceBundle;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loads (base name, locale) pairs in background at startup so the JDK bundle cache and the bundle states are warm
+ * before the first request, each pair is a task of a dedicated fork join pool (daemon threads).
+ */
+final class BundlePreloader {
+
+    private BundlePreloader() {
+        // no-op
+    }
+
+    static void start(final Collection<String> baseNames, final Collection<Locale> locales, final ClassLoader loader) {
+        final List<Runnable> tasks = baseNames.stream()
+                .flatMap(baseName -> locales.stream().map(locale -> (Runnable) () -> load(baseName, locale, loader)))
+                .collect(toList());
+        if (tasks.isEmpty()) {
+            return;
+        }
+        final ForkJoinPool pool = new ForkJoinPool(Math.min(tasks.size(), Runtime.getRuntime().availableProcessors()));
+        final long start = System.nanoTime();
+        CompletableFuture.allOf(tasks.stream()
+                .map(task -> CompletableFuture.runAsync(task, pool))
+                .toArray(CompletableFuture[]::new))
+                .whenComplete((ignored, error) -> {
+                    pool.shutdown();
+                    Log.info("Preloaded " + tasks.size() + " bundles in "
+                            + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms");
+                });
+    }
+
+    private static void load(final String baseName, final Locale locale, final ClassLoader loader) {
+        final long start = System.nanoTime();
+        try {
+            final ResourceBundle bundle = ResourceBundle.getBundle(baseName, locale, loader);
+            final String loaded = bundle.getLocale() == null || bundle.getLocale().toString().isEmpty() ?
+                    "root" : bundle.getLocale().toString();
+            Log.info("Preloaded " + baseName + " " + locale + " (" + loaded + ") in "
+                    + String.format("%.3f", (System.nanoTime() - start) / 1_000_000.) + "ms");
+        } catch (final MissingResourceException e) {
+            Log.info("Can't preload " + baseName + " " + locale + ": " + e.getMessage());
+        } catch (final RuntimeException e) {
+            Log.info("Can't preload " + baseName + " " + locale + ": " + e);
+        }
+    }
+}
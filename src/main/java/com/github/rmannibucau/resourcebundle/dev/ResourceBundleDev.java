@@ -0,0 +1,207 @@
+package com.github.rmannibucau.resourcebundle.dev;
+
+import com.github.rmannibucau.resourcebundle.dev.runtime.DevState;
+
+public class ResourceBundleDev implements ResourceBundleDevMBean {
+    static final String OBJECT_NAME = "com.github.rmannibucau.resourcebundle.dev:type=ResourceBundleDev";
+
+    @Override
+    public boolean isActive() {
+        return DevState.isActive();
+    }
+
+    @Override
+    public void setActive(final boolean active) {
+        DevState.setActive(active);
+    }
+
+    @Override
+    public boolean isScoped() {
+        return DevState.isScoped();
+    }
+
+    @Override
+    public void setScoped(final boolean scoped) {
+        DevState.setScoped(scoped);
+    }
+
+    @Override
+    public String getPattern() {
+        return ResourceBundleDevAgent.getPattern();
+    }
+
+    @Override
+    public void setPattern(final String pattern) {
+        ResourceBundleDevAgent.reconfigure(pattern, getIncludes(), getExcludes());
+    }
+
+    @Override
+    public String getIncludes() {
+        return ResourceBundleDevAgent.getIncludes();
+    }
+
+    @Override
+    public void setIncludes(final String includes) {
+        ResourceBundleDevAgent.reconfigure(getPattern(), includes, getExcludes());
+    }
+
+    @Override
+    public String getExcludes() {
+        return ResourceBundleDevAgent.getExcludes();
+    }
+
+    @Override
+    public void setExcludes(final String excludes) {
+        ResourceBundleDevAgent.reconfigure(getPattern(), getIncludes(), excludes);
+    }
+
+    @Override
+    public long getDecoratedLookups() {
+        return DevState.getDecoratedLookups();
+    }
+
+    @Override
+    public long getInstrumentedBundles() {
+        return DevState.getInstrumentedBundles();
+    }
+
+    @Override
+    public long getFormattingTimeNanos() {
+        return DevState.getFormattingNanos();
+    }
+
+    @Override
+    public long getCacheHits() {
+        return DevState.getCacheHits();
+    }
+
+    @Override
+    public long getCacheMisses() {
+        return DevState.getCacheMisses();
+    }
+
+    @Override
+    public void resetCounters() {
+        DevState.resetCounters();
+    }
+
+    @Override
+    public String getUsageSnapshotFile() {
+        return AgentRuntime.getUsageSnapshotFile();
+    }
+
+    @Override
+    public void writeUsageSnapshot() {
+        AgentRuntime.writeUsageSnapshot();
+    }
+
+    @Override
+    public String getFallbackReportFile() {
+        return AgentRuntime.getFallbackReportFile();
+    }
+
+    @Override
+    public void writeFallbackReport() {
+        AgentRuntime.writeFallbackReport();
+    }
+
+    @Override
+    public String getCallSiteReportFile() {
+        return AgentRuntime.getCallSiteReportFile();
+    }
+
+    @Override
+    public void writeCallSiteReport() {
+        AgentRuntime.writeCallSiteReport();
+    }
+
+    @Override
+    public long getCallSiteSamples() {
+        return AgentRuntime.getCallSiteSamples();
+    }
+
+    @Override
+    public String[] getTopCallSites() {
+        return AgentRuntime.getTopCallSites();
+    }
+
+    @Override
+    public boolean isClassLoaderTracking() {
+        return AgentRuntime.isClassLoaderTracking();
+    }
+
+    @Override
+    public long getTrackedClassLoaders() {
+        return AgentRuntime.getTrackedClassLoaders();
+    }
+
+    @Override
+    public long getUndeployedClassLoaders() {
+        return AgentRuntime.getUndeployedClassLoaders();
+    }
+
+    @Override
+    public long getSuspectedClassLoaders() {
+        return AgentRuntime.getSuspectedClassLoaders();
+    }
+
+    @Override
+    public long getLeakedBundles() {
+        return AgentRuntime.getLeakedBundles();
+    }
+
+    @Override
+    public String[] getClassLoaderReport() {
+        return AgentRuntime.getClassLoaderReport();
+    }
+
+    @Override
+    public long evictUndeployedBundles() {
+        return AgentRuntime.evictUndeployedBundles();
+    }
+
+    @Override
+    public String getDeduplicationReportFile() {
+        return AgentRuntime.getDeduplicationReportFile();
+    }
+
+    @Override
+    public void writeDeduplicationReport() {
+        AgentRuntime.writeDeduplicationReport();
+    }
+
+    @Override
+    public long getDeduplicatedBytes() {
+        return AgentRuntime.getDeduplicatedBytes();
+    }
+
+    @Override
+    public long getMessageFormatCacheHits() {
+        return AgentRuntime.getMessageFormatCacheHits();
+    }
+
+    @Override
+    public long getMessageFormatParses() {
+        return AgentRuntime.getMessageFormatParses();
+    }
+
+    @Override
+    public long getMergedTables() {
+        return AgentRuntime.getMergedTables();
+    }
+
+    @Override
+    public long getMergedEntries() {
+        return AgentRuntime.getMergedEntries();
+    }
+
+    @Override
+    public long getReloadBatches() {
+        return AgentRuntime.getReloadBatches();
+    }
+
+    @Override
+    public String[] getLastReloadBatch() {
+        return AgentRuntime.getLastReloadBatch();
+    }
+}
@@ -1,38 +1,256 @@
 package com.github.rmannibucau.resourcebundle.dev;
 
-import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
 import static java.util.Optional.ofNullable;
 import static java.util.stream.Collectors.toList;
 
 import java.lang.instrument.Instrumentation;
+import java.lang.instrument.UnmodifiableClassException;
+import java.nio.file.Paths;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.ResourceBundle;
 import java.util.stream.Stream;
 
 public class ResourceBundleDevAgent {
+    static final String DEFAULT_PATTERN = "[$locale] $value";
+
+    static final String DEFAULT_EXCLUDES = "java.,sun.,jdk.,oracle.";
+
+    static final String DEFAULT_PSEUDO_BRACKETS = "[,]";
+
+    private static boolean runtimeInstalled;
+
+    private static boolean premain;
+
+    private static boolean cache;
+
+    private static String pattern;
+
+    private static String pseudo;
+
+    private static String pseudoBrackets;
+
+    private static String includes;
+
+    private static String excludes;
+
+    private static ResourceBundleTransformer transformer;
+
+    private static Instrumentation transformerInstrumentation;
+
     private ResourceBundleDevAgent() {
         // no-op
     }
 
-    public static void premain(final String agentArgs,
-                               final Instrumentation instrumentation) {
+    public static synchronized void premain(final String agentArgs,
+                                            final Instrumentation instrumentation) {
         if (!Boolean.parseBoolean(extractConfig(agentArgs, "active="))) {
             Log.info(ResourceBundleDevAgent.class.getSimpleName() + " not active");
             return;
         }
         Log.info(ResourceBundleDevAgent.class.getSimpleName() + " activated");
-        instrumentation.addTransformer(new ResourceBundleTransformer(
-                extractConfig(agentArgs, "pattern="),
-                extractListConfig(agentArgs, "includes="),
-                ofNullable(extractListConfig(agentArgs, "excludes=")).orElseGet(() -> asList("java.", "sun.", "jdk.", "oracle."))));
+        cache = Boolean.parseBoolean(extractConfig(agentArgs, "cache="));
+        installRuntime(instrumentation);
+        readConfiguration(agentArgs);
+        // before touching the runtime which can load ResourceBundle (method types, verification)
+        final boolean messageFormat = Boolean.parseBoolean(extractConfig(agentArgs, "messageFormat="));
+        transformer = new ResourceBundleTransformer(false, transformCache(agentArgs), messageFormat);
+        transformerInstrumentation = instrumentation;
+        premain = true;
+        instrumentation.addTransformer(transformer, true);
+        AgentRuntime.configure(pattern, pseudo, pseudoBrackets, includes, excludes, cache);
+        configureRules(agentArgs);
+        AgentRuntime.setMappedProperties(Boolean.parseBoolean(extractConfig(agentArgs, "mappedProperties=")));
+        AgentRuntime.setBinaryBundles(Boolean.parseBoolean(extractConfig(agentArgs, "binaryBundles=")));
+        AgentRuntime.setScoped(Boolean.parseBoolean(extractConfig(agentArgs, "scoped=")));
+        // decorate=false with usage only counts the lookups, the decoration can still be enabled with JMX
+        AgentRuntime.setActive(!"false".equals(extractConfig(agentArgs, "decorate=")));
+        final String usage = extractConfig(agentArgs, "usage=");
+        if (usage != null) {
+            AgentRuntime.startUsageTracking(usage,
+                    Long.parseLong(ofNullable(extractConfig(agentArgs, "usageInterval=")).orElse("60")));
+        }
+        final String fallbacks = extractConfig(agentArgs, "fallbacks=");
+        if (fallbacks != null) {
+            AgentRuntime.startFallbackTracking(fallbacks);
+        }
+        final String callSites = extractConfig(agentArgs, "callSites=");
+        if (callSites != null) {
+            AgentRuntime.startCallSiteSampling(callSites,
+                    Integer.parseInt(ofNullable(extractConfig(agentArgs, "callSitesRate=")).orElse("1000")),
+                    Integer.parseInt(ofNullable(extractConfig(agentArgs, "callSitesSize=")).orElse("100")));
+        }
+        if (Boolean.parseBoolean(extractConfig(agentArgs, "merged="))) {
+            AgentRuntime.startMergedBundles();
+        }
+        if (Boolean.parseBoolean(extractConfig(agentArgs, "classLoaders="))) {
+            AgentRuntime.startClassLoaderTracking();
+        }
+        if (messageFormat) {
+            startMessageFormatCache(instrumentation);
+        }
+        final String deduplicate = extractConfig(agentArgs, "deduplicate=");
+        if (deduplicate != null) {
+            AgentRuntime.startDeduplication(deduplicate);
+        }
+        final Collection<String> watch = splitList(extractConfig(agentArgs, "watch="));
+        if (watch != null && !watch.isEmpty()) {
+            AgentRuntime.startWatching(watch,
+                    Long.parseLong(ofNullable(extractConfig(agentArgs, "watchDelay=")).orElse("500")));
+        }
+        if (!"false".equals(extractConfig(agentArgs, "jfr="))) {
+            AgentRuntime.startFlightRecorderEvents();
+        }
+        AgentRuntime.registerMBean();
+        preload(agentArgs);
+        if (cache) {
+            Runtime.getRuntime().addShutdownHook(new Thread(AgentRuntime::logCacheStatistics,
+                    ResourceBundleDevAgent.class.getName() + "-cache-statistics"));
+        }
+    }
+
+    /**
+     * Dynamic attach: {@code active=true} retransforms the already loaded ResourceBundle
+     * (or just updates the configuration if already attached), {@code active=false} restores the original bytecode.
+     */
+    public static synchronized void agentmain(final String agentArgs,
+                                              final Instrumentation instrumentation) {
+        if (premain) {
+            Log.info(ResourceBundleDevAgent.class.getSimpleName() + " started with -javaagent, ignoring attach");
+            return;
+        }
+        try {
+            if (Boolean.parseBoolean(extractConfig(agentArgs, "active="))) {
+                if (Boolean.parseBoolean(extractConfig(agentArgs, "cache="))) {
+                    Log.info("cache is not supported when attaching the agent, ignoring it");
+                }
+                installRuntime(instrumentation);
+                readConfiguration(agentArgs);
+                AgentRuntime.configure(pattern, pseudo, pseudoBrackets, includes, excludes, false);
+                configureRules(agentArgs);
+                AgentRuntime.setScoped(Boolean.parseBoolean(extractConfig(agentArgs, "scoped=")));
+                AgentRuntime.setActive(true);
+                if (transformer == null) {
+                    transformer = new ResourceBundleTransformer(true, transformCache(agentArgs), false);
+                    transformerInstrumentation = instrumentation;
+                    instrumentation.addTransformer(transformer, true);
+                    instrumentation.retransformClasses(ResourceBundle.class);
+                    AgentRuntime.registerMBean();
+                }
+                Log.info(ResourceBundleDevAgent.class.getSimpleName() + " attached");
+            } else if (transformer != null) {
+                // each attach gets its own Instrumentation, the transformer is only known by the first one
+                transformerInstrumentation.removeTransformer(transformer);
+                transformer = null;
+                AgentRuntime.reset();
+                transformerInstrumentation.retransformClasses(ResourceBundle.class);
+                transformerInstrumentation = null;
+                Log.info(ResourceBundleDevAgent.class.getSimpleName() + " detached");
+            }
+        } catch (final UnmodifiableClassException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static synchronized String getPattern() {
+        return pattern;
+    }
+
+    static synchronized String getIncludes() {
+        return includes;
+    }
+
+    static synchronized String getExcludes() {
+        return excludes;
+    }
+
+    /**
+     * Live reconfiguration (JMX), the whole configuration is runtime state so no retransformation is needed.
+     */
+    static synchronized void reconfigure(final String newPattern, final String newIncludes, final String newExcludes) {
+        if (transformer == null) {
+            throw new IllegalStateException("Agent not active");
+        }
+        pattern = newPattern;
+        includes = newIncludes;
+        excludes = newExcludes;
+        AgentRuntime.configure(pattern, pseudo, pseudoBrackets, includes, excludes, cache);
+    }
+
+    private static void readConfiguration(final String agentArgs) {
+        pattern = ofNullable(extractConfig(agentArgs, "pattern=")).orElse(DEFAULT_PATTERN);
+        pseudo = extractConfig(agentArgs, "pseudo=");
+        pseudoBrackets = ofNullable(extractConfig(agentArgs, "pseudoBrackets=")).orElse(DEFAULT_PSEUDO_BRACKETS);
+        includes = extractConfig(agentArgs, "includes=");
+        excludes = ofNullable(extractConfig(agentArgs, "excludes=")).orElse(DEFAULT_EXCLUDES);
+    }
+
+    // MessageFormat is usually loaded later, the transformer rewrites it then
+    private static void startMessageFormatCache(final Instrumentation instrumentation) {
+        AgentRuntime.startMessageFormatCache();
+        for (final Class<?> loaded : instrumentation.getAllLoadedClasses()) {
+            if ("java.text.MessageFormat".equals(loaded.getName())) {
+                try {
+                    instrumentation.retransformClasses(loaded);
+                } catch (final UnmodifiableClassException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        }
+    }
+
+    // before the decoration is enabled, bundles keep the rules they resolved
+    private static void configureRules(final String agentArgs) {
+        final String rules = extractConfig(agentArgs, "rules=");
+        if (rules != null) {
+            AgentRuntime.configureRules(rules);
+        }
+    }
+
+    // preload=includes reuses the include rules which are bundle names (no regex)
+    private static void preload(final String agentArgs) {
+        final String preload = extractConfig(agentArgs, "preload=");
+        if (preload == null) {
+            return;
+        }
+        final Collection<String> baseNames = ofNullable(splitList("includes".equals(preload) ? includes : preload))
+                .orElseGet(Collections::emptyList).stream()
+                .filter(it -> {
+                    final boolean regex = AgentRuntime.isRegex(it);
+                    if (regex) {
+                        Log.info("Can't preload regex '" + it + "'");
+                    }
+                    return !regex;
+                })
+                .collect(toList());
+        final Collection<Locale> locales = ofNullable(splitList(extractConfig(agentArgs, "preloadLocales=")))
+                .map(values -> values.stream().map(it -> Locale.forLanguageTag(it.replace('_', '-'))).collect(toList()))
+                .orElseGet(() -> singletonList(Locale.getDefault()));
+        BundlePreloader.start(baseNames, locales, ClassLoader.getSystemClassLoader());
+    }
+
+    private static TransformCache transformCache(final String agentArgs) {
+        return ofNullable(extractConfig(agentArgs, "classCache="))
+                .map(it -> new TransformCache(Paths.get(it)))
+                .orElse(null);
+    }
+
+    private static void installRuntime(final Instrumentation instrumentation) {
+        if (!runtimeInstalled) {
+            BootstrapRuntime.install(instrumentation);
+            runtimeInstalled = true;
+        }
     }
 
-    private static Collection<String> extractListConfig(final String agentArgs, final String name) {
-        return ofNullable(extractConfig(agentArgs, name))
-                .map(it -> Stream.of(it).map(String::trim).filter(v -> !v.isEmpty()).collect(toList()))
+    static Collection<String> splitList(final String value) {
+        return ofNullable(value)
+                .map(it -> Stream.of(it.split(",")).map(String::trim).filter(v -> !v.isEmpty()).collect(toList()))
                 .orElse(null);
     }
 
-    private static String extractConfig(final String agentArgs, final String startStr) {
+    static String extractConfig(final String agentArgs, final String startStr) {
         if (agentArgs != null && agentArgs.contains(startStr)) {
             final int start = agentArgs.indexOf(startStr) + startStr.length();
             final int separator = agentArgs.indexOf('|', start);
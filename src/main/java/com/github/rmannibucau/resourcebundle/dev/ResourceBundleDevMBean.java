@@ -0,0 +1,83 @@
+package com.github.rmannibucau.resourcebundle.dev;
+
+public interface ResourceBundleDevMBean {
+    boolean isActive();
+
+    void setActive(boolean active);
+
+    boolean isScoped();
+
+    void setScoped(boolean scoped);
+
+    String getPattern();
+
+    void setPattern(String pattern);
+
+    String getIncludes();
+
+    void setIncludes(String includes);
+
+    String getExcludes();
+
+    void setExcludes(String excludes);
+
+    long getDecoratedLookups();
+
+    long getInstrumentedBundles();
+
+    long getFormattingTimeNanos();
+
+    long getCacheHits();
+
+    long getCacheMisses();
+
+    void resetCounters();
+
+    String getUsageSnapshotFile();
+
+    void writeUsageSnapshot();
+
+    String getFallbackReportFile();
+
+    void writeFallbackReport();
+
+    String getCallSiteReportFile();
+
+    void writeCallSiteReport();
+
+    long getCallSiteSamples();
+
+    String[] getTopCallSites();
+
+    boolean isClassLoaderTracking();
+
+    long getTrackedClassLoaders();
+
+    long getUndeployedClassLoaders();
+
+    long getSuspectedClassLoaders();
+
+    long getLeakedBundles();
+
+    String[] getClassLoaderReport();
+
+    long evictUndeployedBundles();
+
+    String getDeduplicationReportFile();
+
+    void writeDeduplicationReport();
+
+    long getDeduplicatedBytes();
+
+    long getMessageFormatCacheHits();
+
+    long getMessageFormatParses();
+
+    long getMergedTables();
+
+    long getMergedEntries();
+
+    long getReloadBatches();
+
+    String[] getLastReloadBatch();
+}
@@ -1,53 +1,27 @@
 package com.github.rmannibucau.resourcebundle.dev;
 
-import static java.util.Optional.ofNullable;
-import static org.objectweb.asm.Opcodes.AASTORE;
 import static org.objectweb.asm.Opcodes.ACC_FINAL;
 import static org.objectweb.asm.Opcodes.ACC_PRIVATE;
 import static org.objectweb.asm.Opcodes.ACC_STATIC;
-import static org.objectweb.asm.Opcodes.ACC_SYNTHETIC;
-import static org.objectweb.asm.Opcodes.ACONST_NULL;
 import static org.objectweb.asm.Opcodes.ALOAD;
-import static org.objectweb.asm.Opcodes.ANEWARRAY;
 import static org.objectweb.asm.Opcodes.ARETURN;
-import static org.objectweb.asm.Opcodes.ASM7;
+import static org.objectweb.asm.Opcodes.ASM9;
 import static org.objectweb.asm.Opcodes.ASTORE;
-import static org.objectweb.asm.Opcodes.BIPUSH;
-import static org.objectweb.asm.Opcodes.CHECKCAST;
+import static org.objectweb.asm.Opcodes.ATHROW;
 import static org.objectweb.asm.Opcodes.DUP;
-import static org.objectweb.asm.Opcodes.F_APPEND;
-import static org.objectweb.asm.Opcodes.F_SAME;
-import static org.objectweb.asm.Opcodes.F_SAME1;
+import static org.objectweb.asm.Opcodes.F_FULL;
 import static org.objectweb.asm.Opcodes.GETFIELD;
-import static org.objectweb.asm.Opcodes.GETSTATIC;
-import static org.objectweb.asm.Opcodes.GOTO;
-import static org.objectweb.asm.Opcodes.H_INVOKESPECIAL;
 import static org.objectweb.asm.Opcodes.H_INVOKESTATIC;
-import static org.objectweb.asm.Opcodes.H_INVOKEVIRTUAL;
-import static org.objectweb.asm.Opcodes.ICONST_0;
-import static org.objectweb.asm.Opcodes.ICONST_1;
-import static org.objectweb.asm.Opcodes.ICONST_2;
-import static org.objectweb.asm.Opcodes.ICONST_3;
-import static org.objectweb.asm.Opcodes.ICONST_4;
-import static org.objectweb.asm.Opcodes.ICONST_5;
-import static org.objectweb.asm.Opcodes.IFEQ;
-import static org.objectweb.asm.Opcodes.IFNE;
-import static org.objectweb.asm.Opcodes.IFNULL;
-import static org.objectweb.asm.Opcodes.INTEGER;
-import static org.objectweb.asm.Opcodes.INVOKEINTERFACE;
 import static org.objectweb.asm.Opcodes.INVOKESPECIAL;
 import static org.objectweb.asm.Opcodes.INVOKESTATIC;
-import static org.objectweb.asm.Opcodes.INVOKEVIRTUAL;
-import static org.objectweb.asm.Opcodes.IRETURN;
-import static org.objectweb.asm.Opcodes.POP;
+import static org.objectweb.asm.Opcodes.NEW;
 import static org.objectweb.asm.Opcodes.PUTFIELD;
-import static org.objectweb.asm.Opcodes.PUTSTATIC;
 import static org.objectweb.asm.Opcodes.RETURN;
-import static org.objectweb.asm.Opcodes.SIPUSH;
 
 import java.lang.instrument.ClassFileTransformer;
 import java.security.ProtectionDomain;
-import java.util.Collection;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.ClassVisitor;
@@ -57,129 +31,261 @@ import org.objectweb.asm.Label;
 import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Type;
 
+/**
+ * Only emits {@code invokedynamic} instructions bootstrapped by the runtime {@code Linker},
+ * the decoration itself is plain java in the runtime package (bootstrap class path).
+ * Pattern, cache and activation are runtime state so changing them never needs a retransformation.
+ * {@code MessageFormat} is only transformed when its cache is requested.
+ */
 class ResourceBundleTransformer implements ClassFileTransformer {
 
     private static final String INTERNAL_PREFIX = "__agent__";
 
-    private final String pattern;
+    private static final String RUNTIME_PACKAGE = BootstrapRuntime.RUNTIME_PACKAGE;
 
-    private final Collection<String> includes;
+    private static final String BUNDLE_STATE = RUNTIME_PACKAGE + "BundleState";
 
-    private final Collection<String> excludes;
+    private final boolean attached;
 
-    ResourceBundleTransformer(final String pattern, final Collection<String> includes, final Collection<String> excludes) {
-        this.pattern = ofNullable(pattern).orElse("[$locale] $value");
-        this.includes = includes;
-        this.excludes = excludes;
+    private final TransformCache transformCache;
+
+    private final boolean messageFormat;
+
+    ResourceBundleTransformer(final boolean attached, final TransformCache transformCache, final boolean messageFormat) {
+        this.attached = attached;
+        this.transformCache = transformCache;
+        this.messageFormat = messageFormat;
     }
 
     @Override
     public byte[] transform(final ClassLoader loader, final String className, final Class<?> classBeingRedefined,
             final ProtectionDomain protectionDomain, final byte[] classfileBuffer) {
         if ("java/util/ResourceBundle".equals(className)) {
-            return decorate(classfileBuffer);
+            return rewrite(classfileBuffer, "ResourceBundle");
+        }
+        if (messageFormat && "java/text/MessageFormat".equals(className)) {
+            return rewrite(classfileBuffer, "MessageFormat");
         }
         return classfileBuffer;
     }
 
-    private byte[] decorate(final byte[] classfileBuffer) {
-        try {
-            final ClassReader reader = new ClassReader(classfileBuffer);
-            final ClassWriter writer = new ClassWriter(reader, ClassWriter.COMPUTE_FRAMES);
-            reader.accept(new ResourceBundleClassVisitor(pattern, writer, includes, excludes), ClassReader.SKIP_FRAMES);
-            Log.info("Transformed ResourceBundle");
-            return writer.toByteArray();
-        } catch (final Throwable e) {
-            e.printStackTrace(); // no logger
-            return classfileBuffer;
+    // a cache hit doesn't load ASM at all, it is only touched by the Rewriter
+    private byte[] rewrite(final byte[] classfileBuffer, final String simpleName) {
+        if (transformCache != null) {
+            final byte[] cached = transformCache.load(simpleName, classfileBuffer, attached);
+            if (cached != null) {
+                Log.info("Transformed " + simpleName + (attached ? " (retransformation)" : "") + " from " + transformCache);
+                return cached;
+            }
+        }
+        final byte[] rewritten = "MessageFormat".equals(simpleName) ?
+                Rewriter.messageFormat(classfileBuffer) : Rewriter.decorate(classfileBuffer, attached);
+        if (transformCache != null && rewritten != classfileBuffer) {
+            transformCache.store(simpleName, classfileBuffer, attached, rewritten);
         }
+        return rewritten;
     }
 
     /**
+     * The original frames are kept (the injected code never branches)
+     * so no {@code COMPUTE_FRAMES} and its {@code getCommonSuperClass} class loading while the JVM is starting.
+     */
+    private static final class Rewriter {
+
+        // literal copies of the Linker constants, the runtime classes must not be loaded from the agent loader
+        private static final Handle BOOTSTRAP = new Handle(H_INVOKESTATIC, RUNTIME_PACKAGE + "Linker", "bootstrap",
+                "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/invoke/MethodType;)Ljava/lang/invoke/CallSite;",
+                false);
+
+        private Rewriter() {
+            // no-op
+        }
+
+        private static byte[] decorate(final byte[] classfileBuffer, final boolean retransformation) {
+            try {
+                final ClassReader reader = new ClassReader(classfileBuffer);
+                final ClassWriter writer = new ClassWriter(reader, ClassWriter.COMPUTE_MAXS);
+                reader.accept(retransformation ?
+                        new RetransformedResourceBundleClassVisitor(writer) :
+                        new ResourceBundleClassVisitor(writer, selectGetBundleImpl(reader)), 0);
+                Log.info("Transformed ResourceBundle" + (retransformation ? " (retransformation)" : ""));
+                return writer.toByteArray();
+            } catch (final Throwable e) {
+                e.printStackTrace(); // no logger
+                return classfileBuffer;
+            }
+        }
+
+        // a body change only, valid for a retransformation as well
+        private static byte[] messageFormat(final byte[] classfileBuffer) {
+            try {
+                final ClassReader reader = new ClassReader(classfileBuffer);
+                final ClassWriter writer = new ClassWriter(reader, ClassWriter.COMPUTE_MAXS);
+                reader.accept(new MessageFormatClassVisitor(writer), 0);
+                Log.info("Transformed MessageFormat");
+                return writer.toByteArray();
+            } catch (final Throwable e) {
+                e.printStackTrace(); // no logger
+                return classfileBuffer;
+            }
+        }
+
+        /**
+         * Java 8 has a single getBundleImpl, java 9+ has overloads (caller class, caller class and loader, modules)
+         * all ending in the module one, it is the only one taking {@code Module} parameters.
+         */
+        private static String selectGetBundleImpl(final ClassReader reader) {
+            final List<String> descriptors = new ArrayList<>();
+            reader.accept(new ClassVisitor(ASM9) {
+                @Override
+                public MethodVisitor visitMethod(final int access, final String name, final String descriptor,
+                                                 final String signature, final String[] exceptions) {
+                    if ("getBundleImpl".equals(name)) {
+                        descriptors.add(descriptor);
+                    }
+                    return null;
+                }
+            }, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+            if (descriptors.size() == 1) {
+                return descriptors.get(0);
+            }
+            final List<String> moduleAware = new ArrayList<>();
+            for (final String descriptor : descriptors) {
+                if (descriptor.contains("Ljava/lang/Module;")) {
+                    moduleAware.add(descriptor);
+                }
+            }
+            if (moduleAware.size() != 1) {
+                throw new IllegalStateException("Unsupported ResourceBundle, getBundleImpl overloads: " + descriptors);
+            }
+            return moduleAware.get(0);
+        }
+    }
+
+    /**
+     * Used when ResourceBundle is already loaded, a retransformation can only change method bodies so
+     * no member is added and the bundle state is not available:
+     *
      * {@code
-     *     // original impl just renamed
-     *     private static java.util.ResourceBundle __agent__getBundleImpl(String baseName, Locale locale,
-     *                                                           ClassLoader loader, java.util.ResourceBundle.Control
-     *                                                           control) {
-     *         return null;
+     * public final Object getObject(String key) {
+     * Object obj = indy handleGetObject(handleGetObject(key), this, key); // Decorations.decorateOwnValue
+     * // unchanged original code
      * }
-     *
-     * // original impl just renamed
-     * public final Object _agent_getObject(String key) {
-     * return null;
      * }
      *
-     * private static boolean _agent_isIncluded(final String baseName) {
-     * return baseName == null
-     * || ((EXCLUDES == null || !_agent_matches(baseName, EXCLUDES)) && (INCLUDES == null || _agent_matches(baseName,
-     * INCLUDES)));
-     * }
+     * Values coming from the parent chain are decorated by the parent getObject.
+     */
+    private static class RetransformedResourceBundleClassVisitor extends ClassVisitor {
+
+        private String owner;
+
+        private boolean getObjectSeen;
+
+        private RetransformedResourceBundleClassVisitor(final ClassVisitor visitor) {
+            super(ASM9, visitor);
+        }
+
+        @Override
+        public void visit(final int version, final int access, final String name, final String signature, final String superName,
+                final String[] interfaces) {
+            this.owner = name;
+            super.visit(version, access, name, signature, superName, interfaces);
+        }
+
+        @Override
+        public MethodVisitor visitMethod(final int access, final String name, final String descriptor, final String signature,
+                final String[] exceptions) {
+            final MethodVisitor delegate = super.visitMethod(access, name, descriptor, signature, exceptions);
+            if (!"getObject".equals(name)) {
+                return delegate;
+            }
+            if (getObjectSeen) {
+                throw new IllegalStateException("Ambiguous method " + name);
+            }
+            getObjectSeen = true;
+            return new MethodVisitor(ASM9, delegate) {
+
+                @Override
+                public void visitMethodInsn(final int opcode, final String methodOwner, final String methodName,
+                        final String methodDescriptor, final boolean isInterface) {
+                    super.visitMethodInsn(opcode, methodOwner, methodName, methodDescriptor, isInterface);
+                    if (owner.equals(methodOwner) && "handleGetObject".equals(methodName)) {
+                        super.visitVarInsn(ALOAD, 0);
+                        super.visitVarInsn(ALOAD, 1);
+                        super.visitInvokeDynamicInsn("handleGetObject",
+                                "(Ljava/lang/Object;L" + owner + ";Ljava/lang/String;)Ljava/lang/Object;", Rewriter.BOOTSTRAP);
+                    }
+                }
+            };
+        }
+
+        @Override
+        public void visitEnd() {
+            if (!getObjectSeen) {
+                throw new IllegalStateException("No getObject found");
+            }
+            super.visitEnd();
+        }
+    }
+
+    /**
+     * {@code
+     * // set at the end of the constructor
+     * private final BundleState __agent__state = new BundleState();
      *
-     * private static boolean _agent_matches(final String baseName, final Collection<String> prefixes) {
-     * return baseName != null && prefixes.stream().anyMatch(baseName::startsWith);
+     * // original impl just renamed, parent.getObject(key) is replaced by parent.__agent__getObject(key)
+     * // to only decorate once
+     * public final Object __agent__getObject(String key) {
+     * return null;
      * }
      *
-     * private static ResourceBundle getBundleImpl(String baseName, Locale locale,
-     * ClassLoader loader, java.util.ResourceBundle.Control
-     * control) {
-     * ResourceBundle bundle = __agent__getBundleImpl(baseName, locale, loader, control);
-     * if (bundle != null && baseName != null) {
-     * bundle._agent_instrumented = _agent_isIncluded(baseName);
-     * }
+     * // the selected overload (see selectGetBundleImpl), instrumented in place
+     * private static ResourceBundle getBundleImpl(..., String baseName, Locale locale, ..., Control control) {
+     * try {
+     * control = indy control(baseName, control); // DevControl.wrap or the identity of the control
+     * // original code, before each return (loader is the class loader on java 8 and the target module on java 9+):
+     * indy getBundle(bundle, baseName, locale, loader); // Fallbacks.onGetBundle, a flight recorder event or no-op
      * return bundle;
+     * } catch (Throwable e) { // last handler of the method, MissingResourceException for instance
+     * indy getBundleFailed(baseName); // ends the flight recorder event or no-op
+     * throw e;
      * }
-     *
-     * public final Object getObject(String key) {
-     * final Object value = _agent_getObject(key);
-     * if (_agent_instrumented) {
-     * return doFormat(value);
-     * }
-     * return value;
      * }
      *
-     * private Object doFormat(final Object value) {
-     * if (String.class.isInstance(value)) {
-     * return doFormatString(String.class.cast(value));
+     * // only called for a loaded bundle (cache miss), the include verdict is computed there and not per getBundle
+     * private static ResourceBundle putBundleInCache(CacheKey cacheKey, ResourceBundle bundle, Control control) {
+     * indy bundleLoaded(bundle, bundle.__agent__state); // Decorations.onLoad or no-op
+     * // original code
      * }
-     * if (String[].class.isInstance(value)) {
-     * return Stream.of(String[].class.cast(value))
-     * .map(this::doFormatString)
-     * .toArray(String[]::new);
-     * }
-     * return value;
+     *
+     * public final Object getObject(String key) {
+     * // Decorations.decorate or the identity of the last argument when the agent is not active,
+     * // resolve is __agent__getObject(key) or the merged table of the chain first (MergedBundles)
+     * return indy getObject(this, __agent__state, key, indy resolve(this, __agent__state, key));
      * }
      *
-     * private String doFormatString(final String value) {
-     * return pattern.replace("$value", value)
-     * .replace("$locale", ofNullable(getLocale()).map(Locale::toString).filter(it -> !it.isEmpty()).orElse("default"))
-     * .replace("$lang", ofNullable(getLocale()).map(Locale::getLanguage).filter(it -> !it.isEmpty()
-     * ).orElse("default"))
-     * .replace("$base", getBaseBundleName());
+     * // only when the JDK cache is cleared, the bundle states compare the generation on their next lookup
+     * public static final void clearCache(...) {
+     * DevState.invalidateCaches();
+     * // original code
      * }
      * }
      */
     private static class ResourceBundleClassVisitor extends ClassVisitor {
 
-        private final String pattern;
-
-        private final Collection<String> includes;
-
-        private final Collection<String> excludes;
+        private final String getBundleImplDescriptor;
 
         private String owner;
 
-        private boolean cinitSeen;
-
         private MethodMeta getObjectMeta;
 
-        private MethodMeta getBundleImplMeta;
+        private boolean getBundleImplSeen;
 
-        private ResourceBundleClassVisitor(final String pattern, final ClassVisitor visitor, final Collection<String> includes,
-                final Collection<String> excludes) {
-            super(ASM7, visitor);
-            this.pattern = pattern;
-            this.includes = includes;
-            this.excludes = excludes;
+        private boolean putBundleInCacheSeen;
+
+        private ResourceBundleClassVisitor(final ClassVisitor visitor, final String getBundleImplDescriptor) {
+            super(ASM9, visitor);
+            this.getBundleImplDescriptor = getBundleImplDescriptor;
         }
 
         @Override
@@ -197,23 +303,60 @@ class ResourceBundleTransformer implements ClassFileTransformer {
                     throw new IllegalStateException("Ambiguous method " + name);
                 }
                 this.getObjectMeta = new MethodMeta(access, name, descriptor, signature, exceptions);
-                return super.visitMethod(access, INTERNAL_PREFIX + name, descriptor, signature, exceptions);
+                return new MethodVisitor(ASM9, super.visitMethod(access, INTERNAL_PREFIX + name, descriptor, signature, exceptions)) {
+
+                    @Override
+                    public void visitMethodInsn(final int opcode, final String methodOwner, final String methodName,
+                            final String methodDescriptor, final boolean isInterface) {
+                        super.visitMethodInsn(opcode, methodOwner,
+                                owner.equals(methodOwner) && "getObject".equals(methodName) ?
+                                        INTERNAL_PREFIX + methodName : methodName,
+                                methodDescriptor, isInterface);
+                    }
+                };
             }
-            if ("getBundleImpl".equals(name)) {
-                if (this.getBundleImplMeta != null) {
+            if ("getBundleImpl".equals(name) && getBundleImplDescriptor.equals(descriptor)) {
+                getBundleImplSeen = true;
+                return new GetBundleImplVisitor(super.visitMethod(access, name, descriptor, signature, exceptions), descriptor);
+            }
+            if ("putBundleInCache".equals(name)) {
+                if (putBundleInCacheSeen) {
                     throw new IllegalStateException("Ambiguous method " + name);
                 }
-                this.getBundleImplMeta = new MethodMeta(access, name, descriptor, signature, exceptions);
-                return super.visitMethod(access, INTERNAL_PREFIX + name, descriptor, signature, exceptions);
+                putBundleInCacheSeen = true;
+                return new MethodVisitor(ASM9, super.visitMethod(access, name, descriptor, signature, exceptions)) {
+
+                    @Override
+                    public void visitCode() {
+                        super.visitCode();
+                        onBundleLoaded(mv, bundleParameter(descriptor));
+                    }
+                };
             }
-            if ("<clinit>".equals(name)) {
-                cinitSeen = true;
-                return new MethodVisitor(ASM7, super.visitMethod(access, name, descriptor, signature, exceptions)) {
+            if ("<init>".equals(name)) {
+                return new MethodVisitor(ASM9, super.visitMethod(access, name, descriptor, signature, exceptions)) {
+
+                    @Override
+                    public void visitInsn(final int opcode) {
+                        if (opcode == RETURN) {
+                            initState(mv);
+                        }
+                        super.visitInsn(opcode);
+                    }
+
+                    @Override
+                    public void visitMaxs(final int maxStack, final int maxLocals) {
+                        super.visitMaxs(-1, -1);
+                    }
+                };
+            }
+            if ("clearCache".equals(name)) {
+                return new MethodVisitor(ASM9, super.visitMethod(access, name, descriptor, signature, exceptions)) {
 
                     @Override
                     public void visitCode() {
                         super.visitCode();
-                        setIncludesExcludes(mv);
+                        incrementCacheGeneration(mv);
                     }
 
                     @Override
@@ -227,369 +370,45 @@ class ResourceBundleTransformer implements ClassFileTransformer {
 
         @Override
         public void visitEnd() {
-            if (getObjectMeta == null || getBundleImplMeta == null) { // validate our state
-                throw new IllegalStateException("No getObject or getBundleImpl found");
+            if (getObjectMeta == null || !getBundleImplSeen || !putBundleInCacheSeen) { // validate our state
+                throw new IllegalStateException("No getObject, getBundleImpl or putBundleInCache found");
             }
 
-            addCustomStaticFields();
             addCustomField();
-            createIsIncluded();
-            createDoFormat();
             createDelegatingGetObject();
-            createDelegatingGetBundleImpl();
-
-            if (!cinitSeen) {
-                final MethodVisitor mv = super.visitMethod(ACC_STATIC, "<clinit>", "()V", null, null);
-                mv.visitCode();
-                setIncludesExcludes(mv);
-                mv.visitInsn(RETURN);
-                mv.visitMaxs(-1, -1);
-                mv.visitEnd();
-            }
 
             super.visitEnd();
         }
 
-        private void addCustomStaticFields() {
-            visitField(ACC_PRIVATE + ACC_FINAL + ACC_STATIC, INTERNAL_PREFIX + "INCLUDES", "Ljava/util/Collection;",
-                    "Ljava/util/Collection<Ljava/lang/String;>;", null).visitEnd();
-            visitField(ACC_PRIVATE + ACC_FINAL + ACC_STATIC, INTERNAL_PREFIX + "EXCLUDES", "Ljava/util/Collection;",
-                    "Ljava/util/Collection<Ljava/lang/String;>;", null).visitEnd();
-        }
-
         private void addCustomField() {
-            visitField(ACC_PRIVATE, INTERNAL_PREFIX + "instrumented", "Z", null, null).visitEnd();
+            visitField(ACC_PRIVATE + ACC_FINAL, INTERNAL_PREFIX + "state", "L" + BUNDLE_STATE + ";", null, null).visitEnd();
         }
 
-        private void setIncludesExcludes(final MethodVisitor mv) {
-            createArray(includes, mv);
-            mv.visitFieldInsn(PUTSTATIC, owner, INTERNAL_PREFIX + "INCLUDES", "Ljava/util/Collection;");
-
-            createArray(excludes, mv);
-            mv.visitFieldInsn(PUTSTATIC, owner, INTERNAL_PREFIX + "EXCLUDES", "Ljava/util/Collection;");
+        private void initState(final MethodVisitor mv) {
+            mv.visitVarInsn(ALOAD, 0);
+            mv.visitTypeInsn(NEW, BUNDLE_STATE);
+            mv.visitInsn(DUP);
+            mv.visitMethodInsn(INVOKESPECIAL, BUNDLE_STATE, "<init>", "()V", false);
+            mv.visitFieldInsn(PUTFIELD, owner, INTERNAL_PREFIX + "state", "L" + BUNDLE_STATE + ";");
         }
 
-        private void createArray(final Collection<String> values, final MethodVisitor mv) {
-            if (values == null || values.isEmpty()) {
-                mv.visitInsn(ACONST_NULL);
-            } else {
-                visitInt(mv, values.size());
-                mv.visitTypeInsn(ANEWARRAY, "java/lang/String");
-                int idx = 0;
-                for (final String value : values) {
-                    mv.visitInsn(DUP);
-                    visitInt(mv, idx);
-                    mv.visitLdcInsn(value);
-                    mv.visitInsn(AASTORE);
-                    idx++;
-                }
-                mv.visitMethodInsn(INVOKESTATIC, "java/util/Arrays", "asList", "([Ljava/lang/Object;)Ljava/util/List;", false);
-            }
+        private void incrementCacheGeneration(final MethodVisitor mv) {
+            mv.visitMethodInsn(INVOKESTATIC, RUNTIME_PACKAGE + "DevState", "invalidateCaches", "()V", false);
         }
 
-        private void visitInt(final MethodVisitor mv, final int value) {
-            switch (value) {
-            case 0:
-                mv.visitInsn(ICONST_0);
-                break;
-            case 1:
-                mv.visitInsn(ICONST_1);
-                break;
-            case 2:
-                mv.visitInsn(ICONST_2);
-                break;
-            case 3:
-                mv.visitInsn(ICONST_3);
-                break;
-            case 4:
-                mv.visitInsn(ICONST_4);
-                break;
-            case 5:
-                mv.visitInsn(ICONST_5);
-                break;
-            default:
-                if (value > 5 && value <= 255) {
-                    mv.visitInsn(BIPUSH);
-                } else {
-                    mv.visitInsn(SIPUSH);
-                }
-            }
+        private void onBundleLoaded(final MethodVisitor mv, final int bundle) {
+            mv.visitVarInsn(ALOAD, bundle);
+            mv.visitInsn(DUP);
+            mv.visitFieldInsn(GETFIELD, owner, INTERNAL_PREFIX + "state", "L" + BUNDLE_STATE + ";");
+            mv.visitInvokeDynamicInsn("bundleLoaded", "(L" + owner + ";L" + BUNDLE_STATE + ";)V", Rewriter.BOOTSTRAP);
         }
 
-        private void createIsIncluded() {
-            {
-                final MethodVisitor mv = visitMethod(ACC_PRIVATE + ACC_STATIC, INTERNAL_PREFIX + "matches",
-                        "(Ljava/lang/String;Ljava/util/Collection;)Z",
-                        "(Ljava/lang/String;Ljava/util/Collection<Ljava/lang/String;>;)Z", null);
-                mv.visitCode();
-                mv.visitVarInsn(ALOAD, 0);
-                final Label l0 = new Label();
-                mv.visitJumpInsn(IFNULL, l0);
-                mv.visitVarInsn(ALOAD, 1);
-                mv.visitMethodInsn(INVOKEINTERFACE, "java/util/Collection", "stream", "()Ljava/util/stream/Stream;", true);
-                mv.visitVarInsn(ALOAD, 0);
-                mv.visitInsn(DUP);
-                mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/Object", "getClass", "()Ljava/lang/Class;", false);
-                mv.visitInsn(POP);
-                mv.visitInvokeDynamicInsn("test", "(Ljava/lang/String;)Ljava/util/function/Predicate;", new Handle(H_INVOKESTATIC,
-                        "java/lang/invoke/LambdaMetafactory", "metafactory",
-                        "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/invoke/MethodType;Ljava/lang/invoke/MethodType;Ljava/lang/invoke/MethodHandle;Ljava/lang/invoke/MethodType;)Ljava/lang/invoke/CallSite;"),
-                        Type.getType("(Ljava/lang/Object;)Z"),
-                        new Handle(H_INVOKEVIRTUAL, "java/lang/String", "startsWith", "(Ljava/lang/String;)Z", false),
-                        Type.getType("(Ljava/lang/String;)Z"));
-                mv.visitMethodInsn(INVOKEINTERFACE, "java/util/stream/Stream", "anyMatch", "(Ljava/util/function/Predicate;)Z",
-                        true);
-                mv.visitJumpInsn(IFEQ, l0);
-                mv.visitInsn(ICONST_1);
-                final Label l1 = new Label();
-                mv.visitJumpInsn(GOTO, l1);
-                mv.visitLabel(l0);
-                mv.visitFrame(F_SAME, 0, null, 0, null);
-                mv.visitInsn(ICONST_0);
-                mv.visitLabel(l1);
-                mv.visitFrame(F_SAME1, 0, null, 1, new Object[] { INTEGER });
-                mv.visitInsn(IRETURN);
-                mv.visitMaxs(-1, -1);
-                mv.visitEnd();
-            }
-            {
-                final MethodVisitor mv = visitMethod(ACC_PRIVATE + ACC_STATIC, INTERNAL_PREFIX + "isIncluded",
-                        "(Ljava/lang/String;)Z", null, null);
-                mv.visitCode();
-                mv.visitVarInsn(ALOAD, 0);
-                Label l0 = new Label();
-                mv.visitJumpInsn(IFNULL, l0);
-                mv.visitFieldInsn(GETSTATIC, owner, INTERNAL_PREFIX + "EXCLUDES", "Ljava/util/Collection;");
-                Label l1 = new Label();
-                mv.visitJumpInsn(IFNULL, l1);
-                mv.visitVarInsn(ALOAD, 0);
-                mv.visitFieldInsn(GETSTATIC, owner, INTERNAL_PREFIX + "EXCLUDES", "Ljava/util/Collection;");
-                mv.visitMethodInsn(INVOKESTATIC, owner, INTERNAL_PREFIX + "matches",
-                        "(Ljava/lang/String;Ljava/util/Collection;)Z", false);
-                Label l2 = new Label();
-                mv.visitJumpInsn(IFNE, l2);
-                mv.visitLabel(l1);
-                mv.visitFrame(F_SAME, 0, null, 0, null);
-                mv.visitFieldInsn(GETSTATIC, owner, INTERNAL_PREFIX + "INCLUDES", "Ljava/util/Collection;");
-                mv.visitJumpInsn(IFNULL, l0);
-                mv.visitVarInsn(ALOAD, 0);
-                mv.visitFieldInsn(GETSTATIC, owner, INTERNAL_PREFIX + "INCLUDES", "Ljava/util/Collection;");
-                mv.visitMethodInsn(INVOKESTATIC, owner, INTERNAL_PREFIX + "matches",
-                        "(Ljava/lang/String;Ljava/util/Collection;)Z", false);
-                mv.visitJumpInsn(IFEQ, l2);
-                mv.visitLabel(l0);
-                mv.visitFrame(F_SAME, 0, null, 0, null);
-                mv.visitInsn(ICONST_1);
-                Label l3 = new Label();
-                mv.visitJumpInsn(GOTO, l3);
-                mv.visitLabel(l2);
-                mv.visitFrame(F_SAME, 0, null, 0, null);
-                mv.visitInsn(ICONST_0);
-                mv.visitLabel(l3);
-                mv.visitFrame(F_SAME1, 0, null, 1, new Object[] { INTEGER });
-                mv.visitInsn(IRETURN);
-                mv.visitMaxs(-1, -1);
-                mv.visitEnd();
+        private int bundleParameter(final String descriptor) {
+            final int index = parameterSlot(descriptor, "L" + owner + ";", false);
+            if (index < 0) {
+                throw new IllegalStateException("No bundle parameter in putBundleInCache" + descriptor);
             }
-        }
-
-        private void createDoFormat() {
-            {
-                final MethodVisitor mv = visitMethod(ACC_PRIVATE, INTERNAL_PREFIX + "doFormat",
-                        "(Ljava/lang/Object;)Ljava/lang/Object;", null, null);
-                mv.visitCode();
-                mv.visitLdcInsn(Type.getType("Ljava/lang/String;"));
-                mv.visitVarInsn(ALOAD, 1);
-                mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/Class", "isInstance", "(Ljava/lang/Object;)Z", false);
-                final Label l0 = new Label();
-                mv.visitJumpInsn(IFEQ, l0);
-                mv.visitVarInsn(ALOAD, 0);
-                mv.visitLdcInsn(Type.getType("Ljava/lang/String;"));
-                mv.visitVarInsn(ALOAD, 1);
-                mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/Class", "cast", "(Ljava/lang/Object;)Ljava/lang/Object;", false);
-                mv.visitTypeInsn(CHECKCAST, "java/lang/String");
-                mv.visitMethodInsn(INVOKESPECIAL, owner, INTERNAL_PREFIX + "doFormatString",
-                        "(Ljava/lang/String;)Ljava/lang/String;", false);
-                mv.visitInsn(ARETURN);
-                mv.visitLabel(l0);
-                mv.visitFrame(F_SAME, 0, null, 0, null);
-                mv.visitLdcInsn(Type.getType("[Ljava/lang/String;"));
-                mv.visitVarInsn(ALOAD, 1);
-                mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/Class", "isInstance", "(Ljava/lang/Object;)Z", false);
-                Label l1 = new Label();
-                mv.visitJumpInsn(IFEQ, l1);
-                mv.visitLdcInsn(Type.getType("[Ljava/lang/String;"));
-                mv.visitVarInsn(ALOAD, 1);
-                mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/Class", "cast", "(Ljava/lang/Object;)Ljava/lang/Object;", false);
-                mv.visitTypeInsn(CHECKCAST, "[Ljava/lang/Object;");
-                mv.visitMethodInsn(INVOKESTATIC, "java/util/stream/Stream", "of",
-                        "([Ljava/lang/Object;)Ljava/util/stream/Stream;", true);
-                mv.visitVarInsn(ALOAD, 0);
-                mv.visitInvokeDynamicInsn("apply", "(L" + owner + ";)Ljava/util/function/Function;", new Handle(H_INVOKESTATIC,
-                        "java/lang/invoke/LambdaMetafactory", "metafactory",
-                        "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/invoke/MethodType;Ljava/lang/invoke/MethodType;Ljava/lang/invoke/MethodHandle;Ljava/lang/invoke/MethodType;)Ljava/lang/invoke/CallSite;",
-                        false), Type.getType("(Ljava/lang/Object;)Ljava/lang/Object;"),
-                        new Handle(H_INVOKESPECIAL, owner, INTERNAL_PREFIX + "doFormatString",
-                                "(Ljava/lang/String;)Ljava/lang/String;", false),
-                        Type.getType("(Ljava/lang/String;)Ljava/lang/String;"));
-                mv.visitMethodInsn(INVOKEINTERFACE, "java/util/stream/Stream", "map",
-                        "(Ljava/util/function/Function;)Ljava/util/stream/Stream;", true);
-                mv.visitInvokeDynamicInsn("apply", "()Ljava/util/function/IntFunction;", new Handle(H_INVOKESTATIC,
-                        "java/lang/invoke/LambdaMetafactory", "metafactory",
-                        "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/invoke/MethodType;Ljava/lang/invoke/MethodType;Ljava/lang/invoke/MethodHandle;Ljava/lang/invoke/MethodType;)Ljava/lang/invoke/CallSite;",
-                        false), Type.getType("(I)Ljava/lang/Object;"),
-                        new Handle(H_INVOKESTATIC, owner, "lambda$" + INTERNAL_PREFIX + "doFormat$0", "(I)[Ljava/lang/String;", false),
-                        Type.getType("(I)[Ljava/lang/String;"));
-                mv.visitMethodInsn(INVOKEINTERFACE, "java/util/stream/Stream", "toArray",
-                        "(Ljava/util/function/IntFunction;)[Ljava/lang/Object;", true);
-                mv.visitInsn(ARETURN);
-                mv.visitLabel(l1);
-                mv.visitFrame(F_SAME, 0, null, 0, null);
-                mv.visitVarInsn(ALOAD, 1);
-                mv.visitInsn(ARETURN);
-                mv.visitMaxs(-1, -1);
-                mv.visitEnd();
-            }
-            {
-                final MethodVisitor mv = visitMethod(ACC_PRIVATE, INTERNAL_PREFIX + "doFormatString",
-                        "(Ljava/lang/String;)Ljava/lang/String;", null, null);
-                mv.visitCode();
-                mv.visitLdcInsn(pattern);
-                mv.visitLdcInsn("$value");
-                mv.visitVarInsn(ALOAD, 1);
-                mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/String", "replace",
-                        "(Ljava/lang/CharSequence;Ljava/lang/CharSequence;)Ljava/lang/String;", false);
-                mv.visitLdcInsn("$locale");
-                mv.visitVarInsn(ALOAD, 0);
-                mv.visitMethodInsn(INVOKESPECIAL, owner, "getLocale", "()Ljava/util/Locale;", false);
-                mv.visitMethodInsn(INVOKESTATIC, "java/util/Optional", "ofNullable", "(Ljava/lang/Object;)Ljava/util/Optional;",
-                        false);
-                mv.visitInvokeDynamicInsn("apply", "()Ljava/util/function/Function;", new Handle(H_INVOKESTATIC,
-                        "java/lang/invoke/LambdaMetafactory", "metafactory",
-                        "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/invoke/MethodType;Ljava/lang/invoke/MethodType;Ljava/lang/invoke/MethodHandle;Ljava/lang/invoke/MethodType;)Ljava/lang/invoke/CallSite;", false),
-                        Type.getType("(Ljava/lang/Object;)Ljava/lang/Object;"),
-                        new Handle(H_INVOKEVIRTUAL, "java/util/Locale", "toString", "()Ljava/lang/String;", false),
-                        Type.getType("(Ljava/util/Locale;)Ljava/lang/String;"));
-                mv.visitMethodInsn(INVOKEVIRTUAL, "java/util/Optional", "map",
-                        "(Ljava/util/function/Function;)Ljava/util/Optional;", false);
-                mv.visitInvokeDynamicInsn("test", "()Ljava/util/function/Predicate;", new Handle(H_INVOKESTATIC,
-                        "java/lang/invoke/LambdaMetafactory", "metafactory",
-                        "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/invoke/MethodType;Ljava/lang/invoke/MethodType;Ljava/lang/invoke/MethodHandle;Ljava/lang/invoke/MethodType;)Ljava/lang/invoke/CallSite;", false),
-                        Type.getType("(Ljava/lang/Object;)Z"),
-                        new Handle(H_INVOKESTATIC, owner, "lambda$" + INTERNAL_PREFIX + "doFormatString$0", "(Ljava/lang/String;)Z", false),
-                        Type.getType("(Ljava/lang/String;)Z"));
-                mv.visitMethodInsn(INVOKEVIRTUAL, "java/util/Optional", "filter",
-                        "(Ljava/util/function/Predicate;)Ljava/util/Optional;", false);
-                mv.visitLdcInsn("default");
-                mv.visitMethodInsn(INVOKEVIRTUAL, "java/util/Optional", "orElse", "(Ljava/lang/Object;)Ljava/lang/Object;",
-                        false);
-                mv.visitTypeInsn(CHECKCAST, "java/lang/CharSequence");
-                mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/String", "replace",
-                        "(Ljava/lang/CharSequence;Ljava/lang/CharSequence;)Ljava/lang/String;", false);
-                mv.visitLdcInsn("$lang");
-                mv.visitVarInsn(ALOAD, 0);
-                mv.visitMethodInsn(INVOKESPECIAL, owner, "getLocale", "()Ljava/util/Locale;", false);
-                mv.visitMethodInsn(INVOKESTATIC, "java/util/Optional", "ofNullable", "(Ljava/lang/Object;)Ljava/util/Optional;",
-                        false);
-                mv.visitInvokeDynamicInsn("apply", "()Ljava/util/function/Function;", new Handle(H_INVOKESTATIC,
-                        "java/lang/invoke/LambdaMetafactory", "metafactory",
-                        "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/invoke/MethodType;Ljava/lang/invoke/MethodType;Ljava/lang/invoke/MethodHandle;Ljava/lang/invoke/MethodType;)Ljava/lang/invoke/CallSite;", false),
-                        Type.getType("(Ljava/lang/Object;)Ljava/lang/Object;"),
-                        new Handle(H_INVOKEVIRTUAL, "java/util/Locale", "getLanguage", "()Ljava/lang/String;", false),
-                        Type.getType("(Ljava/util/Locale;)Ljava/lang/String;"));
-                mv.visitMethodInsn(INVOKEVIRTUAL, "java/util/Optional", "map",
-                        "(Ljava/util/function/Function;)Ljava/util/Optional;", false);
-                mv.visitInvokeDynamicInsn("test", "()Ljava/util/function/Predicate;", new Handle(H_INVOKESTATIC,
-                        "java/lang/invoke/LambdaMetafactory", "metafactory",
-                        "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/invoke/MethodType;Ljava/lang/invoke/MethodType;Ljava/lang/invoke/MethodHandle;Ljava/lang/invoke/MethodType;)Ljava/lang/invoke/CallSite;", false),
-                        Type.getType("(Ljava/lang/Object;)Z"),
-                        new Handle(H_INVOKESTATIC, owner, "lambda$" + INTERNAL_PREFIX + "doFormatString$1", "(Ljava/lang/String;)Z", false),
-                        Type.getType("(Ljava/lang/String;)Z"));
-                mv.visitMethodInsn(INVOKEVIRTUAL, "java/util/Optional", "filter",
-                        "(Ljava/util/function/Predicate;)Ljava/util/Optional;", false);
-                mv.visitLdcInsn("default");
-                mv.visitMethodInsn(INVOKEVIRTUAL, "java/util/Optional", "orElse", "(Ljava/lang/Object;)Ljava/lang/Object;",
-                        false);
-                mv.visitTypeInsn(CHECKCAST, "java/lang/CharSequence");
-                mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/String", "replace",
-                        "(Ljava/lang/CharSequence;Ljava/lang/CharSequence;)Ljava/lang/String;", false);
-                mv.visitLdcInsn("$base");
-                mv.visitVarInsn(ALOAD, 0);
-                mv.visitMethodInsn(INVOKESPECIAL, owner, "getBaseBundleName", "()Ljava/lang/String;", false);
-                mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/String", "replace",
-                        "(Ljava/lang/CharSequence;Ljava/lang/CharSequence;)Ljava/lang/String;", false);
-                mv.visitInsn(ARETURN);
-                mv.visitMaxs(-1, -1);
-                mv.visitEnd();
-            }
-            {
-                final MethodVisitor mv = visitMethod(ACC_PRIVATE + ACC_STATIC + ACC_SYNTHETIC, "lambda$" + INTERNAL_PREFIX + "doFormatString$0", "(Ljava/lang/String;)Z", null, null);
-                mv.visitCode();
-                mv.visitVarInsn(ALOAD, 0);
-                mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/String", "isEmpty", "()Z", false);
-                final Label l0 = new Label();
-                mv.visitJumpInsn(IFNE, l0);
-                mv.visitInsn(ICONST_1);
-                final Label l1 = new Label();
-                mv.visitJumpInsn(GOTO, l1);
-                mv.visitLabel(l0);
-                mv.visitFrame(F_SAME, 0, null, 0, null);
-                mv.visitInsn(ICONST_0);
-                mv.visitLabel(l1);
-                mv.visitFrame(F_SAME1, 0, null, 1, new Object[] {INTEGER});
-                mv.visitInsn(IRETURN);
-                mv.visitMaxs(-1, -1);
-                mv.visitEnd();
-            }
-            {
-                final MethodVisitor mv = visitMethod(ACC_PRIVATE + ACC_STATIC + ACC_SYNTHETIC, "lambda$" + INTERNAL_PREFIX + "doFormatString$1", "(Ljava/lang/String;)Z", null, null);
-                mv.visitCode();
-                mv.visitVarInsn(ALOAD, 0);
-                mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/String", "isEmpty", "()Z", false);
-                final Label l0 = new Label();
-                mv.visitJumpInsn(IFNE, l0);
-                mv.visitInsn(ICONST_1);
-                final Label l1 = new Label();
-                mv.visitJumpInsn(GOTO, l1);
-                mv.visitLabel(l0);
-                mv.visitFrame(F_SAME, 0, null, 0, null);
-                mv.visitInsn(ICONST_0);
-                mv.visitLabel(l1);
-                mv.visitFrame(F_SAME1, 0, null, 1, new Object[] {INTEGER});
-                mv.visitInsn(IRETURN);
-                mv.visitMaxs(-1, -1);
-                mv.visitEnd();
-            }
-        }
-
-        private void createDelegatingGetBundleImpl() {
-            final Label label = new Label();
-            final MethodVisitor mv = super.visitMethod(getBundleImplMeta.access, getBundleImplMeta.name,
-                    getBundleImplMeta.descriptor, getBundleImplMeta.signature, getBundleImplMeta.exceptions);
-            mv.visitCode();
-            mv.visitVarInsn(ALOAD, 0);
-            mv.visitVarInsn(ALOAD, 1);
-            mv.visitVarInsn(ALOAD, 2);
-            mv.visitVarInsn(ALOAD, 3);
-            mv.visitMethodInsn(INVOKESTATIC, owner, INTERNAL_PREFIX + "getBundleImpl",
-                    "(Ljava/lang/String;Ljava/util/Locale;Ljava/lang/ClassLoader;Ljava/util/ResourceBundle$Control;)L" + owner
-                            + ";",
-                    false);
-            mv.visitVarInsn(ASTORE, 4);
-            mv.visitVarInsn(ALOAD, 4);
-            mv.visitJumpInsn(IFNULL, label);
-            mv.visitVarInsn(ALOAD, 0);
-            mv.visitJumpInsn(IFNULL, label);
-            mv.visitVarInsn(ALOAD, 4);
-            mv.visitVarInsn(ALOAD, 0);
-            mv.visitMethodInsn(INVOKESTATIC, owner, INTERNAL_PREFIX + "isIncluded", "(Ljava/lang/String;)Z", false);
-            mv.visitFieldInsn(PUTFIELD, owner, INTERNAL_PREFIX + "instrumented", "Z");
-            mv.visitLabel(label);
-            mv.visitFrame(F_APPEND, 1, new Object[] { owner }, 0, null);
-            mv.visitVarInsn(ALOAD, 4);
-            mv.visitInsn(ARETURN);
-            mv.visitMaxs(-1, -1);
-            mv.visitEnd();
+            return index;
         }
 
         private void createDelegatingGetObject() {
@@ -597,26 +416,169 @@ class ResourceBundleTransformer implements ClassFileTransformer {
                     getObjectMeta.signature, getObjectMeta.exceptions);
             getObject.visitCode();
             getObject.visitVarInsn(ALOAD, 0);
+            getObject.visitVarInsn(ALOAD, 0);
+            getObject.visitFieldInsn(GETFIELD, owner, INTERNAL_PREFIX + "state", "L" + BUNDLE_STATE + ";");
             getObject.visitVarInsn(ALOAD, 1);
-            getObject.visitMethodInsn(INVOKEVIRTUAL, owner, INTERNAL_PREFIX + "getObject",
-                    "(Ljava/lang/String;)Ljava/lang/Object;", false);
-            getObject.visitVarInsn(ASTORE, 2);
             getObject.visitVarInsn(ALOAD, 0);
-            getObject.visitFieldInsn(GETFIELD, owner, INTERNAL_PREFIX + "instrumented", "Z");
-            final Label ifLabel = new Label();
-            getObject.visitJumpInsn(IFEQ, ifLabel);
             getObject.visitVarInsn(ALOAD, 0);
-            getObject.visitVarInsn(ALOAD, 2);
-            getObject.visitMethodInsn(INVOKESPECIAL, owner, INTERNAL_PREFIX + "doFormat",
-                    "(Ljava/lang/Object;)Ljava/lang/Object;", false);
-            getObject.visitInsn(ARETURN);
-            getObject.visitLabel(ifLabel);
-            getObject.visitFrame(F_APPEND, 1, new Object[] { "java/lang/Object" }, 0, null);
-            getObject.visitVarInsn(ALOAD, 2);
+            getObject.visitFieldInsn(GETFIELD, owner, INTERNAL_PREFIX + "state", "L" + BUNDLE_STATE + ";");
+            getObject.visitVarInsn(ALOAD, 1);
+            getObject.visitInvokeDynamicInsn("resolve",
+                    "(L" + owner + ";L" + BUNDLE_STATE + ";Ljava/lang/String;)Ljava/lang/Object;", Rewriter.BOOTSTRAP);
+            getObject.visitInvokeDynamicInsn("getObject",
+                    "(L" + owner + ";L" + BUNDLE_STATE + ";Ljava/lang/String;Ljava/lang/Object;)Ljava/lang/Object;", Rewriter.BOOTSTRAP);
             getObject.visitInsn(ARETURN);
             getObject.visitMaxs(-1, -1);
             getObject.visitEnd();
         }
+
+        /**
+         * Parameters are located by type since their position depends on the overload:
+         * first {@code String} (base name), first {@code Locale}, last {@code Control} and
+         * {@code ClassLoader} (java 8) or last {@code Module} (java 9+, the module of the bundles).
+         */
+        private final class GetBundleImplVisitor extends MethodVisitor {
+
+            private final int baseName;
+
+            private final int locale;
+
+            private final int control;
+
+            private final int loader;
+
+            private final Object[] parameters;
+
+            private final Label start = new Label();
+
+            private GetBundleImplVisitor(final MethodVisitor delegate, final String descriptor) {
+                super(ASM9, delegate);
+                this.parameters = frameTypes(descriptor);
+                this.baseName = parameterSlot(descriptor, "Ljava/lang/String;", false);
+                this.locale = parameterSlot(descriptor, "Ljava/util/Locale;", false);
+                this.control = parameterSlot(descriptor, "Ljava/util/ResourceBundle$Control;", true);
+                final int classLoader = parameterSlot(descriptor, "Ljava/lang/ClassLoader;", false);
+                this.loader = classLoader >= 0 ? classLoader : parameterSlot(descriptor, "Ljava/lang/Module;", true);
+                if (baseName < 0 || locale < 0 || control < 0 || loader < 0) {
+                    throw new IllegalStateException("Unsupported getBundleImpl" + descriptor);
+                }
+            }
+
+            @Override
+            public void visitCode() {
+                super.visitCode();
+                super.visitLabel(start);
+                super.visitVarInsn(ALOAD, baseName);
+                super.visitVarInsn(ALOAD, control);
+                super.visitInvokeDynamicInsn("control",
+                        "(Ljava/lang/String;Ljava/util/ResourceBundle$Control;)Ljava/util/ResourceBundle$Control;",
+                        Rewriter.BOOTSTRAP);
+                super.visitVarInsn(ASTORE, control);
+            }
+
+            @Override
+            public void visitInsn(final int opcode) {
+                if (opcode == ARETURN) {
+                    super.visitInsn(DUP);
+                    super.visitVarInsn(ALOAD, baseName);
+                    super.visitVarInsn(ALOAD, locale);
+                    super.visitVarInsn(ALOAD, loader);
+                    super.visitInvokeDynamicInsn("getBundle",
+                            "(L" + owner + ";Ljava/lang/String;Ljava/util/Locale;Ljava/lang/Object;)V", Rewriter.BOOTSTRAP);
+                }
+                super.visitInsn(opcode);
+            }
+
+            // visited last so the original handlers come first in the exception table
+            @Override
+            public void visitMaxs(final int maxStack, final int maxLocals) {
+                final Label end = new Label();
+                final Label handler = new Label();
+                super.visitLabel(end);
+                super.visitTryCatchBlock(start, end, handler, null);
+                super.visitLabel(handler);
+                super.visitFrame(F_FULL, parameters.length, parameters, 1, new Object[] { "java/lang/Throwable" });
+                super.visitVarInsn(ALOAD, baseName);
+                super.visitInvokeDynamicInsn("getBundleFailed", "(Ljava/lang/String;)V", Rewriter.BOOTSTRAP);
+                super.visitInsn(ATHROW);
+                super.visitMaxs(maxStack, maxLocals);
+            }
+
+            // the frame of the handler only relies on the parameters, the other locals are not used there
+            private Object[] frameTypes(final String descriptor) {
+                final Type[] types = Type.getArgumentTypes(descriptor);
+                final Object[] frame = new Object[types.length];
+                for (int i = 0; i < types.length; i++) {
+                    if (types[i].getSort() != Type.OBJECT && types[i].getSort() != Type.ARRAY) {
+                        throw new IllegalStateException("Unsupported getBundleImpl" + descriptor);
+                    }
+                    frame[i] = types[i].getInternalName();
+                }
+                return frame;
+            }
+        }
+    }
+
+    /**
+     * The original body is dropped (so are its frames), the default call site target is the same code:
+     *
+     * {@code
+     * public static String format(String pattern, Object... arguments) {
+     * return indy messageFormat(pattern, arguments); // MessageFormats.format or formatUncached
+     * }
+     * }
+     */
+    private static class MessageFormatClassVisitor extends ClassVisitor {
+
+        private static final String FORMAT_DESCRIPTOR = "(Ljava/lang/String;[Ljava/lang/Object;)Ljava/lang/String;";
+
+        private boolean formatSeen;
+
+        private MessageFormatClassVisitor(final ClassVisitor visitor) {
+            super(ASM9, visitor);
+        }
+
+        @Override
+        public MethodVisitor visitMethod(final int access, final String name, final String descriptor, final String signature,
+                final String[] exceptions) {
+            final MethodVisitor delegate = super.visitMethod(access, name, descriptor, signature, exceptions);
+            if (!"format".equals(name) || !FORMAT_DESCRIPTOR.equals(descriptor) || (access & ACC_STATIC) == 0) {
+                return delegate;
+            }
+            formatSeen = true;
+            delegate.visitCode();
+            delegate.visitVarInsn(ALOAD, 0);
+            delegate.visitVarInsn(ALOAD, 1);
+            delegate.visitInvokeDynamicInsn("messageFormat", FORMAT_DESCRIPTOR, Rewriter.BOOTSTRAP);
+            delegate.visitInsn(ARETURN);
+            delegate.visitMaxs(-1, -1);
+            delegate.visitEnd();
+            return null;
+        }
+
+        @Override
+        public void visitEnd() {
+            if (!formatSeen) {
+                throw new IllegalStateException("No static format found");
+            }
+            super.visitEnd();
+        }
+    }
+
+    // local variable slot of a static method parameter
+    private static int parameterSlot(final String descriptor, final String type, final boolean last) {
+        int slot = 0;
+        int found = -1;
+        for (final Type parameter : Type.getArgumentTypes(descriptor)) {
+            if (parameter.getDescriptor().equals(type)) {
+                found = slot;
+                if (!last) {
+                    return found;
+                }
+            }
+            slot += parameter.getSize();
+        }
+        return found;
     }
 
     private static final class MethodMeta {
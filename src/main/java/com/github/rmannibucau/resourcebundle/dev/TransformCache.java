@@ -0,0 +1,131 @@
+package com.github.rmannibucau.resourcebundle.dev;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.net.URISyntaxException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.stream.Stream;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+
+/**
+ * Rewritten classes stored in a directory, the file name is the class name and a checksum of the original bytes,
+ * of the mode (premain or attach) and of the agent code, the agent configuration being runtime state.
+ * A JVM started again with the same JDK and agent then skips ASM.
+ */
+final class TransformCache {
+
+    private final Path directory;
+
+    private final long agentFingerprint;
+
+    TransformCache(final Path directory) {
+        this.directory = directory;
+        this.agentFingerprint = fingerprintAgent();
+    }
+
+    byte[] load(final String className, final byte[] original, final boolean attached) {
+        final Path file = directory.resolve(key(className, original, attached));
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try {
+            final byte[] bytes = Files.readAllBytes(file);
+            if (bytes.length < 4 || (bytes[0] & 0xFF) != 0xCA || (bytes[1] & 0xFF) != 0xFE
+                    || (bytes[2] & 0xFF) != 0xBA || (bytes[3] & 0xFF) != 0xBE) {
+                Log.info("Ignoring invalid cached class " + file);
+                return null;
+            }
+            return bytes;
+        } catch (final IOException e) {
+            Log.info("Can't read " + file + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    // concurrent JVMs can write the same entry, the content is the same and the move is atomic,
+    // the temporary file is named after the process and not created with createTempFile which seeds a SecureRandom
+    void store(final String className, final byte[] original, final boolean attached, final byte[] rewritten) {
+        final Path file = directory.resolve(key(className, original, attached));
+        try {
+            Files.createDirectories(directory);
+            final Path tmp = directory.resolve(file.getFileName() + "." + pid() + ".tmp");
+            Files.write(tmp, rewritten);
+            try {
+                Files.move(tmp, file, ATOMIC_MOVE, REPLACE_EXISTING);
+            } catch (final AtomicMoveNotSupportedException e) {
+                Files.move(tmp, file, REPLACE_EXISTING);
+            }
+        } catch (final IOException e) {
+            Log.info("Can't cache the transformed class in " + directory + ": " + e.getMessage());
+        }
+    }
+
+    @Override
+    public String toString() {
+        return directory.toString();
+    }
+
+    private String key(final String className, final byte[] original, final boolean attached) {
+        return className + '-' + Long.toHexString(checksum(original)) + '-' + Integer.toHexString(original.length)
+                + '-' + Long.toHexString(agentFingerprint) + (attached ? "-attached" : "") + ".class";
+    }
+
+    private static String pid() {
+        final String name = ManagementFactory.getRuntimeMXBean().getName(); // pid@host
+        final int at = name.indexOf('@');
+        return at > 0 ? name.substring(0, at) : Integer.toHexString(name.hashCode());
+    }
+
+    // the jar (or classes directory) content, a rebuilt agent can emit different bytecode even with the same version
+    private static long fingerprintAgent() {
+        final CRC32 crc = new CRC32();
+        final Adler32 adler = new Adler32();
+        try {
+            final Path location = Paths.get(TransformCache.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+            if (Files.isDirectory(location)) {
+                try (final Stream<Path> files = Files.walk(location)) {
+                    for (final Path file : (Iterable<Path>) files.filter(Files::isRegularFile).sorted()::iterator) {
+                        final byte[] name = location.relativize(file).toString().getBytes(UTF_8);
+                        crc.update(name);
+                        adler.update(name);
+                        update(crc, adler, file);
+                    }
+                }
+            } else {
+                update(crc, adler, location);
+            }
+        } catch (final IOException | URISyntaxException e) {
+            throw new IllegalStateException("Can't fingerprint the agent", e);
+        }
+        return crc.getValue() << 32 | adler.getValue();
+    }
+
+    private static void update(final CRC32 crc, final Adler32 adler, final Path file) throws IOException {
+        try (final InputStream in = Files.newInputStream(file)) {
+            final byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                crc.update(buffer, 0, read);
+                adler.update(buffer, 0, read);
+            }
+        }
+    }
+
+    // two 32 bits checksums instead of a MessageDigest: the JCA initialization costs more than the rewrite itself
+    private static long checksum(final byte[] bytes) {
+        final CRC32 crc = new CRC32();
+        crc.update(bytes);
+        final Adler32 adler = new Adler32();
+        adler.update(bytes);
+        return crc.getValue() << 32 | adler.getValue();
+    }
+}
@@ -0,0 +1,30 @@
+package com.github.rmannibucau.resourcebundle.dev;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+import com.github.rmannibucau.resourcebundle.dev.runtime.UsageSnapshot;
+
+/**
+ * Merges the key usage snapshots of several nodes:
+ * {@code java -cp resource-bundle-dev.jar com.github.rmannibucau.resourcebundle.dev.UsageMerge merged.tsv node1.tsv node2.tsv}.
+ * Runs without the agent so the runtime classes can be used from the application loader.
+ */
+public final class UsageMerge {
+    private UsageMerge() {
+        // no-op
+    }
+
+    public static void main(final String[] args) throws IOException {
+        if (args.length < 2) {
+            throw new IllegalArgumentException("Usage: UsageMerge <output> <snapshot>...");
+        }
+        final UsageSnapshot merged = new UsageSnapshot();
+        for (int i = 1; i < args.length; i++) {
+            merged.merge(UsageSnapshot.read(Paths.get(args[i])));
+        }
+        merged.write(Paths.get(args[0]));
+        Log.info("Merged " + (args.length - 1) + " snapshots in " + args[0] + ": "
+                + merged.size() + " keys, " + merged.unused() + " never read");
+    }
+}
@@ -0,0 +1,119 @@
+package com.github.rmannibucau.resourcebundle.dev.runtime;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Include/exclude rules compiled once: plain names go in a prefix trie,
+ * rules using regex constructs are compiled and matched against the beginning of the base name.
+ */
+public final class BaseNameMatcher {
+
+    private static final String REGEX_CHARS = "\\^$*+?()[]{}|";
+
+    private final Node prefixes;
+
+    private final Pattern[] patterns;
+
+    private BaseNameMatcher(final Node prefixes, final Pattern[] patterns) {
+        this.prefixes = prefixes;
+        this.patterns = patterns;
+    }
+
+    public boolean matches(final String baseName) {
+        return prefixes.matchesPrefixOf(baseName) || matchesPattern(baseName);
+    }
+
+    private boolean matchesPattern(final String baseName) {
+        for (final Pattern pattern : patterns) {
+            if (pattern.matcher(baseName).lookingAt()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public static BaseNameMatcher compile(final Collection<String> rules) {
+        if (rules == null || rules.isEmpty()) {
+            return null;
+        }
+        final Node root = new Node();
+        final List<Pattern> patterns = new ArrayList<>();
+        for (final String rule : rules) {
+            if (isRegex(rule)) {
+                patterns.add(Pattern.compile(rule));
+            } else {
+                root.add(rule);
+            }
+        }
+        return new BaseNameMatcher(root, patterns.toArray(new Pattern[0]));
+    }
+
+    // a dot is kept literal since it is the package separator in all real rules
+    public static boolean isRegex(final String rule) {
+        for (int i = 0; i < rule.length(); i++) {
+            if (REGEX_CHARS.indexOf(rule.charAt(i)) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static final class Node {
+
+        private char[] keys = new char[0];
+
+        private Node[] children = new Node[0];
+
+        private boolean terminal;
+
+        private void add(final String prefix) {
+            Node current = this;
+            for (int i = 0; i < prefix.length(); i++) {
+                current = current.getOrCreate(prefix.charAt(i));
+            }
+            current.terminal = true;
+        }
+
+        private Node getOrCreate(final char c) {
+            final int idx = Arrays.binarySearch(keys, c);
+            if (idx >= 0) {
+                return children[idx];
+            }
+            final int insertion = -idx - 1;
+            final Node child = new Node();
+
+            final char[] newKeys = new char[keys.length + 1];
+            System.arraycopy(keys, 0, newKeys, 0, insertion);
+            newKeys[insertion] = c;
+            System.arraycopy(keys, insertion, newKeys, insertion + 1, keys.length - insertion);
+            keys = newKeys;
+
+            final Node[] newChildren = new Node[children.length + 1];
+            System.arraycopy(children, 0, newChildren, 0, insertion);
+            newChildren[insertion] = child;
+            System.arraycopy(children, insertion, newChildren, insertion + 1, children.length - insertion);
+            children = newChildren;
+
+            return child;
+        }
+
+        private boolean matchesPrefixOf(final String value) {
+            Node current = this;
+            for (int i = 0; i < value.length(); i++) {
+                if (current.terminal) {
+                    return true;
+                }
+                final int idx = Arrays.binarySearch(current.keys, value.charAt(i));
+                if (idx < 0) {
+                    return false;
+                }
+                current = current.children[idx];
+            }
+            return current.terminal;
+        }
+    }
+}
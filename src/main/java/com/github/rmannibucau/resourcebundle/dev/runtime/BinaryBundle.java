@@ -0,0 +1,180 @@
+package com.github.rmannibucau.resourcebundle.dev.runtime;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Bundle read from a {@code .rbd} file compiled by the maven plugin from all the {@code .properties} of a base name.
+ * The layout (big endian ints, offsets are absolute positions in the file) is:
+ *
+ * {@code
+ * int magic, int version, int localeCount, int stringCount
+ * localeCount * (int localeNameId, int sectionOffset)  // locale name is the file name suffix, "" for the root bundle
+ * int[stringCount + 1] string offsets                   // string i is the UTF-8 bytes [offsets[i], offsets[i + 1])
+ * UTF-8 bytes                                           // keys, values and locale names of all locales, deduplicated
+ * sections: int size, int buckets, int[buckets] displacements, int[size] keyIds, int[size] valueIds
+ * }
+ *
+ * The section is a minimal perfect hash (hash and displace): the bucket of a key is {@code hash(key, 0) % buckets}
+ * and its slot {@code hash(key, displacement) % size}, a lookup is two hashes, a key comparison and values are
+ * decoded on their first read.
+ */
+public final class BinaryBundle extends java.util.ResourceBundle {
+
+    public static final int MAGIC = 0x52424442; // RBDB
+
+    public static final int VERSION = 1;
+
+    public static final String EXTENSION = "rbd";
+
+    private final ByteBuffer content;
+
+    private final int stringOffsets;
+
+    private final int size;
+
+    private final int buckets;
+
+    private final int displacements;
+
+    private final int keyIds;
+
+    private final int valueIds;
+
+    private final Object[] values;
+
+    private volatile Set<String> keys;
+
+    private BinaryBundle(final ByteBuffer content, final int stringOffsets, final int section) {
+        this.content = content;
+        this.stringOffsets = stringOffsets;
+        this.size = content.getInt(section);
+        this.buckets = content.getInt(section + 4);
+        this.displacements = section + 8;
+        this.keyIds = displacements + buckets * 4;
+        this.valueIds = keyIds + size * 4;
+        this.values = new Object[size];
+    }
+
+    /**
+     * @return the bundle of the locale or null if the file doesn't have this locale.
+     */
+    public static BinaryBundle open(final ByteBuffer content, final String locale) throws IOException {
+        if (content.limit() < 16 || content.getInt(0) != MAGIC) {
+            throw new IOException("Not a binary bundle");
+        }
+        if (content.getInt(4) != VERSION) {
+            throw new IOException("Unsupported binary bundle version " + content.getInt(4));
+        }
+        final int locales = content.getInt(8);
+        final int stringOffsets = 16 + locales * 8;
+        for (int i = 0; i < locales; i++) {
+            if (stringEquals(content, stringOffsets, content.getInt(16 + i * 8), locale)) {
+                return new BinaryBundle(content, stringOffsets, content.getInt(16 + i * 8 + 4));
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Shared with the compiler, must never change for a given {@link #VERSION}.
+     */
+    public static int hash(final CharSequence key, final int seed) {
+        int hash = 0x811C9DC5 ^ (seed * 0x9E3779B9);
+        for (int i = 0; i < key.length(); i++) {
+            hash = (hash ^ key.charAt(i)) * 0x01000193;
+        }
+        hash ^= hash >>> 16;
+        hash *= 0x85EBCA6B;
+        hash ^= hash >>> 13;
+        return hash & Integer.MAX_VALUE;
+    }
+
+    @Override
+    protected Object handleGetObject(final String key) {
+        if (key == null) {
+            throw new NullPointerException();
+        }
+        if (size == 0) {
+            return null;
+        }
+        final int displacement = content.getInt(displacements + (hash(key, 0) % buckets) * 4);
+        final int slot = hash(key, displacement) % size;
+        if (!stringEquals(content, stringOffsets, content.getInt(keyIds + slot * 4), key)) {
+            return null;
+        }
+        Object value = values[slot];
+        if (value == null) { // racy but strings are immutable, worse case is to decode twice
+            value = Deduplication.onDecode(this, string(content, stringOffsets, content.getInt(valueIds + slot * 4)));
+            values[slot] = value;
+        }
+        return value;
+    }
+
+    @Override
+    public Enumeration<String> getKeys() {
+        final Set<String> all = new LinkedHashSet<>(handleKeySet());
+        if (parent != null) {
+            all.addAll(parent.keySet());
+        }
+        return Collections.enumeration(all);
+    }
+
+    // entries of this bundle only, keys are in the content and not retained as strings
+    int size() {
+        return size;
+    }
+
+    @Override
+    protected Set<String> handleKeySet() {
+        Set<String> result = keys;
+        if (result == null) {
+            result = new HashSet<>(size * 4 / 3 + 1);
+            for (int i = 0; i < size; i++) {
+                result.add(string(content, stringOffsets, content.getInt(keyIds + i * 4)));
+            }
+            result = Collections.unmodifiableSet(result);
+            keys = result;
+        }
+        return result;
+    }
+
+    private static boolean stringEquals(final ByteBuffer content, final int stringOffsets, final int id,
+                                        final String value) {
+        final int start = content.getInt(stringOffsets + id * 4);
+        final int end = content.getInt(stringOffsets + id * 4 + 4);
+        if (end - start < value.length()) { // an UTF-8 encoding is never shorter than the chars
+            return false;
+        }
+        if (end - start > value.length()) {
+            return string(content, stringOffsets, id).equals(value);
+        }
+        for (int i = start; i < end; i++) {
+            final byte b = content.get(i);
+            if (b < 0) {
+                return string(content, stringOffsets, id).equals(value);
+            }
+            if (b != value.charAt(i - start)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String string(final ByteBuffer content, final int stringOffsets, final int id) {
+        final int start = content.getInt(stringOffsets + id * 4);
+        final int end = content.getInt(stringOffsets + id * 4 + 4);
+        final byte[] bytes = new byte[end - start];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = content.get(start + i);
+        }
+        return new String(bytes, UTF_8);
+    }
+}
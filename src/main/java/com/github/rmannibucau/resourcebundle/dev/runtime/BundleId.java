@@ -0,0 +1,48 @@
+package com.github.rmannibucau.resourcebundle.dev.runtime;
+
+import java.util.Locale;
+import java.util.ResourceBundle;
+
+/**
+ * Base name and locale of a bundle, the key of the data which must outlive the bundle instances.
+ */
+final class BundleId {
+
+    final String baseName;
+
+    // Locale#toString, empty for the root bundle
+    final String locale;
+
+    private final int hash;
+
+    BundleId(final String baseName, final String locale) {
+        this.baseName = baseName;
+        this.locale = locale;
+        this.hash = 31 * baseName.hashCode() + locale.hashCode();
+    }
+
+    static BundleId of(final ResourceBundle bundle) {
+        return new BundleId(bundle.getBaseBundleName(), localeName(bundle.getLocale()));
+    }
+
+    static String localeName(final Locale locale) {
+        return locale == null ? "" : locale.toString();
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!BundleId.class.isInstance(o)) {
+            return false;
+        }
+        final BundleId other = BundleId.class.cast(o);
+        return baseName.equals(other.baseName) && locale.equals(other.locale);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+}
@@ -0,0 +1,132 @@
+package com.github.rmannibucau.resourcebundle.dev.runtime;
+
+import java.util.ResourceBundle;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Agent state of one bundle instance, stored in the {@code __agent__state} final field
+ * the transformer adds to {@code ResourceBundle} and set in its constructor.
+ *
+ * Publication guarantee: the final field makes the state visible with the bundle to any thread (JLS 17.5), even
+ * through a racy publication. After that, the lookups only read plain fields without lock nor volatile write, each
+ * derived value is published as a single write which can't be seen partially: an {@code int} packing the include
+ * verdict with the filter version it was computed for, an immutable holder of the decorated values of a cache
+ * generation and the merged table of the parent chain (also immutable and tagged with its generation). A thread either reads the value of the current version/generation or computes it again (idempotent),
+ * it never pairs a version with the verdict of another one nor reads a decorated value of a previous generation
+ * once it saw the new generation.
+ */
+public final class BundleState {
+
+    private final boolean cacheEnabled = Decorations.isCacheEnabled();
+
+    // filter version << 1 | included, 0 is never current since versions start at 1
+    private int verdict;
+
+    private DecoratedValues decorated;
+
+    private MergedBundles.Table merged;
+
+    // immutable, resolved when the bundle is loaded or on its first decoration
+    private DecorationRules.Resolution rules;
+
+    private ConcurrentMap<String, LongAdder> usage;
+
+    private ConcurrentMap<String, Fallbacks.Resolution> resolutions;
+
+    private volatile boolean loaderRegistered;
+
+    // racy but idempotent: the worse case is two threads evaluating the same verdict
+    boolean isInstrumented(final ResourceBundle bundle) {
+        final int version = IncludeFilter.version() << 1;
+        final int current = verdict;
+        if ((current & ~1) == version) {
+            return (current & 1) != 0;
+        }
+        final String name = bundle.getBaseBundleName();
+        final boolean included = name != null && IncludeFilter.isIncluded(name);
+        if (included && (current & 1) == 0) {
+            DevState.onInstrumented();
+        }
+        verdict = included ? version | 1 : version;
+        return included;
+    }
+
+    // read before the formatter: a reconfiguration sets it then increments the generation so the values of
+    // the current generation are never formatted with a previous formatter
+    ConcurrentMap<String, Object> getCache() {
+        if (!cacheEnabled) {
+            return null;
+        }
+        final int generation = DevState.cacheGeneration();
+        DecoratedValues current = decorated;
+        if (current == null || current.generation != generation) { // racing threads can drop each other entries
+            current = new DecoratedValues(generation);
+            decorated = current;
+        }
+        return current.values;
+    }
+
+    MergedBundles.Table getMerged() {
+        return merged;
+    }
+
+    // racy, two getBundle of the same bundle can both build it
+    void setMerged(final MergedBundles.Table table) {
+        merged = table;
+    }
+
+    DecorationRules.Resolution getRules(final ResourceBundle bundle) {
+        DecorationRules.Resolution current = rules;
+        if (current == null) {
+            current = DecorationRules.resolve(bundle.getBaseBundleName());
+            rules = current;
+        }
+        return current;
+    }
+
+    // racy as well, UsageCounters.register always returns the same map for a bundle
+    ConcurrentMap<String, LongAdder> getUsage(final ResourceBundle bundle) {
+        ConcurrentMap<String, LongAdder> counters = usage;
+        if (counters == null) {
+            counters = UsageCounters.register(bundle);
+            usage = counters;
+        }
+        return counters;
+    }
+
+    ConcurrentMap<String, Fallbacks.Resolution> getResolutions(final ResourceBundle bundle) {
+        ConcurrentMap<String, Fallbacks.Resolution> values = resolutions;
+        if (values == null) {
+            values = Fallbacks.register(bundle);
+            resolutions = values;
+        }
+        return values;
+    }
+
+    boolean isLoaderRegistered() {
+        return loaderRegistered;
+    }
+
+    // racy, a bundle registered twice is one more weak reference in ClassLoaderRegistry
+    boolean markLoaderRegistered() {
+        if (loaderRegistered) {
+            return false;
+        }
+        loaderRegistered = true;
+        return true;
+    }
+
+    // final fields: safely read through the plain field, a stale generation is replaced instead of cleared
+    private static final class DecoratedValues {
+
+        private final int generation;
+
+        private final ConcurrentMap<String, Object> values = new ConcurrentHashMap<>();
+
+        private DecoratedValues(final int generation) {
+            this.generation = generation;
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package com.github.rmannibucau.resourcebundle.dev.runtime;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * Watches bundle source directories and expires only the changed bundles.
+ * Included bundles loaded through a JDK control get a time to live of {@code delay} (see {@link DevControl}) so the
+ * JDK cache asks {@link #isChanged(String, String, long)} at most once per period per bundle, a changed bundle is
+ * reloaded on its next {@code getBundle} and the JDK expires its children with it (a child checks the expiration of its
+ * parent). A changed compiled {@code .rbd} file changes every locale of its base name, they all come from this file.
+ * Reloaded bundles are new instances so they get a new {@link BundleState} (decorated values cache included), the
+ * fallback resolutions of the changed bundles and their children and the recorded {@link MessageFormats} are dropped.
+ *
+ * Events are debounced: a batch is applied once no event happened during {@code delay}.
+ */
+public final class BundleWatcher {
+
+    // bundle name (Control#toBundleName) -> change time
+    private static final Map<String, Long> CHANGES = new ConcurrentHashMap<>();
+
+    // base name of a compiled bundle -> change time, the file holds all the locales of the base
+    private static final Map<String, Long> COMPILED_CHANGES = new ConcurrentHashMap<>();
+
+    // batch entry of a compiled bundle: <base name>_*
+    private static final String ALL_LOCALES = "_*";
+
+    private static final LongAdder BATCHES = new LongAdder();
+
+    // bundle names of the last applied batch, * when events were lost
+    private static volatile String[] lastBatch = new String[0];
+
+    private static volatile List<Path> directories;
+
+    private static volatile long delay;
+
+    // lost events, everything watched is considered changed
+    private static volatile long overflow;
+
+    private BundleWatcher() {
+        // no-op
+    }
+
+    public static boolean isWatching() {
+        return directories != null;
+    }
+
+    public static synchronized void start(final List<Path> sources, final long delayMillis) throws IOException {
+        if (directories != null) {
+            throw new IllegalStateException("Already watching " + directories);
+        }
+        final WatchService watchService = sources.get(0).getFileSystem().newWatchService();
+        final List<Path> absolute = new ArrayList<>(sources.size());
+        for (final Path source : sources) {
+            final Path directory = source.toAbsolutePath().normalize();
+            register(watchService, directory);
+            absolute.add(directory);
+        }
+        final Thread thread = new Thread(() -> watch(watchService), "resource-bundle-dev-watcher");
+        thread.setDaemon(true);
+        thread.start();
+        delay = delayMillis;
+        directories = absolute;
+        Linker.relink();
+    }
+
+    public static long getBatches() {
+        return BATCHES.sum();
+    }
+
+    public static String[] getLastBatch() {
+        return lastBatch.clone();
+    }
+
+    static long getDelay() {
+        return delay;
+    }
+
+    static boolean isChanged(final String baseName, final String bundleName, final long loadTime) {
+        final Long changed = CHANGES.get(bundleName);
+        final Long compiled = COMPILED_CHANGES.get(baseName);
+        return (changed != null && changed >= loadTime) || (compiled != null && compiled >= loadTime)
+                || overflow >= loadTime;
+    }
+
+    // a source file overrides the classpath one, it is where the translators work
+    static Path findSource(final String resourceName) {
+        final List<Path> current = directories;
+        if (current == null) {
+            return null;
+        }
+        for (final Path directory : current) {
+            final Path file = directory.resolve(resourceName);
+            if (Files.isRegularFile(file)) {
+                return file;
+            }
+        }
+        return null;
+    }
+
+    private static void watch(final WatchService watchService) {
+        try {
+            while (true) {
+                final Set<String> batch = new TreeSet<>();
+                WatchKey key = watchService.take();
+                final long firstEvent = System.currentTimeMillis();
+                while (key != null) {
+                    onEvents(watchService, key, batch);
+                    // quiet period to merge an editor save or a resource copy, bounded to not starve
+                    key = System.currentTimeMillis() - firstEvent > delay * 10 ? null : watchService.poll(delay, MILLISECONDS);
+                }
+                if (!batch.isEmpty()) {
+                    apply(batch);
+                }
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (final ClosedWatchServiceException e) {
+            // stopped
+        }
+    }
+
+    private static void onEvents(final WatchService watchService, final WatchKey key, final Set<String> batch) {
+        final Path parent = (Path) key.watchable();
+        for (final WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == OVERFLOW) {
+                batch.add("*");
+                continue;
+            }
+            final Path path = parent.resolve((Path) event.context());
+            if (event.kind() == ENTRY_CREATE && Files.isDirectory(path)) {
+                try {
+                    register(watchService, path);
+                } catch (final IOException e) {
+                    e.printStackTrace(); // no logger
+                }
+                continue;
+            }
+            final String name = bundleName(path);
+            if (name != null) {
+                batch.add(name);
+            }
+        }
+        key.reset();
+    }
+
+    private static void apply(final Set<String> batch) {
+        final long now = System.currentTimeMillis();
+        if (batch.contains("*")) {
+            overflow = now;
+        }
+        for (final String name : batch) {
+            if ("*".equals(name)) {
+                continue;
+            }
+            if (name.endsWith(ALL_LOCALES)) {
+                final String baseName = name.substring(0, name.length() - ALL_LOCALES.length());
+                COMPILED_CHANGES.put(baseName, now);
+                Fallbacks.invalidateAll(baseName);
+            } else {
+                CHANGES.put(name, now);
+                Fallbacks.invalidate(name);
+            }
+        }
+        MessageFormats.clear();
+        BATCHES.increment();
+        lastBatch = batch.toArray(new String[0]);
+    }
+
+    // app/messages_fr.properties -> app.messages_fr, a compiled app/messages.rbd -> app.messages_* (all its locales)
+    private static String bundleName(final Path file) {
+        final String fileName = file.getFileName().toString();
+        final String extension;
+        if (fileName.endsWith(".properties")) {
+            extension = ".properties";
+        } else if (fileName.endsWith('.' + BinaryBundle.EXTENSION)) {
+            extension = '.' + BinaryBundle.EXTENSION;
+        } else {
+            return null;
+        }
+        for (final Path directory : directories) {
+            if (file.startsWith(directory)) {
+                final String relative = directory.relativize(file).toString().replace(File.separatorChar, '/');
+                final String name = relative.substring(0, relative.length() - extension.length()).replace('/', '.');
+                return extension.equals(".properties") ? name : name + ALL_LOCALES;
+            }
+        }
+        return null;
+    }
+
+    private static void register(final WatchService watchService, final Path root) throws IOException {
+        try (final Stream<Path> tree = Files.walk(root)) {
+            for (final Path directory : (Iterable<Path>) tree.filter(Files::isDirectory)::iterator) {
+                directory.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+            }
+        }
+    }
+}
@@ -0,0 +1,286 @@
+package com.github.rmannibucau.resourcebundle.dev.runtime;
+
+import static java.lang.invoke.MethodType.methodType;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.ResourceBundle;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Samples about one lookup of the included bundles every {@code rate} and attributes it to its caller
+ * (first frame outside {@code java.util} and the agent) with {@code StackWalker} on java 9+, a stack trace on java 8.
+ * The samples are aggregated per caller method, base name and key in a top-K table (space saving: when the table is
+ * full the least sampled entry is replaced and its count becomes the overestimation of the new one), so the memory is
+ * bounded and the hot entries are kept. A lookup which is not sampled costs a thread local random draw.
+ */
+public final class CallSiteSampler {
+
+    private static final Walker WALKER = Walker.create();
+
+    private static final LongAdder SAMPLES = new LongAdder();
+
+    // guarded by itself, count and overestimation per site
+    private static final Map<Site, long[]> TABLE = new HashMap<>();
+
+    private static volatile boolean enabled;
+
+    private static volatile int rate;
+
+    private static int size;
+
+    private static Path reportFile;
+
+    private CallSiteSampler() {
+        // no-op
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static synchronized Path getReportFile() {
+        return reportFile;
+    }
+
+    public static long getSamples() {
+        return SAMPLES.sum();
+    }
+
+    public static synchronized void start(final Path file, final int sampleRate, final int tableSize) {
+        if (sampleRate < 1 || tableSize < 1) {
+            throw new IllegalArgumentException("Sample rate and table size must be positive");
+        }
+        reportFile = file;
+        configure(sampleRate, tableSize);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                write();
+            } catch (final IOException | RuntimeException e) {
+                e.printStackTrace(); // no logger
+            }
+        }, "resource-bundle-dev-call-sites-shutdown"));
+        enabled = true;
+        Linker.relink();
+    }
+
+    // drops the samples
+    static void configure(final int sampleRate, final int tableSize) {
+        rate = sampleRate;
+        synchronized (TABLE) {
+            size = tableSize;
+            TABLE.clear();
+            SAMPLES.reset();
+        }
+    }
+
+    // folded in the getObject call site
+    static void sample(final ResourceBundle bundle, final BundleState state, final String key, final Object value) {
+        final int current = rate;
+        if ((current > 1 && ThreadLocalRandom.current().nextInt(current) != 0) || !state.isInstrumented(bundle)) {
+            return;
+        }
+        final String caller = WALKER.caller();
+        SAMPLES.increment();
+        record(caller == null ? "unknown" : caller, bundle.getBaseBundleName(), key);
+    }
+
+    /**
+     * @return one line per site, most sampled first: caller, base name, key, samples, overestimation and estimated lookups.
+     */
+    public static String[] top() {
+        final List<Map.Entry<Site, long[]>> entries;
+        synchronized (TABLE) {
+            entries = new ArrayList<>(TABLE.size());
+            for (final Map.Entry<Site, long[]> entry : TABLE.entrySet()) {
+                entries.add(new HashMap.SimpleImmutableEntry<>(entry.getKey(), entry.getValue().clone()));
+            }
+        }
+        entries.sort((a, b) -> Long.compare(b.getValue()[0], a.getValue()[0]));
+        final long currentRate = rate;
+        final String[] lines = new String[entries.size()];
+        for (int i = 0; i < lines.length; i++) {
+            final Site site = entries.get(i).getKey();
+            final long[] counts = entries.get(i).getValue();
+            lines[i] = ReportFiles.escape(site.caller) + '\t' + ReportFiles.escape(site.baseName) + '\t'
+                    + ReportFiles.escape(site.key) + '\t' + counts[0] + '\t' + counts[1] + '\t' + counts[0] * currentRate;
+        }
+        return lines;
+    }
+
+    public static synchronized void write() throws IOException {
+        if (reportFile == null) {
+            throw new IllegalStateException("Call site sampling not started");
+        }
+        final String[] lines = top();
+        ReportFiles.write(reportFile, writer -> {
+            writer.write("# site: caller, base, key, samples, overestimation, estimated lookups");
+            writer.newLine();
+            for (final String line : lines) {
+                writer.write("site\t" + line);
+                writer.newLine();
+            }
+            writer.write("# total: samples, sample rate");
+            writer.newLine();
+            writer.write("total\t" + SAMPLES.sum() + '\t' + rate);
+            writer.newLine();
+        });
+    }
+
+    static void record(final String caller, final String baseName, final String key) {
+        final Site site = new Site(caller, baseName, key);
+        synchronized (TABLE) {
+            final long[] counts = TABLE.get(site);
+            if (counts != null) {
+                counts[0]++;
+                return;
+            }
+            if (TABLE.size() < size) {
+                TABLE.put(site, new long[]{1, 0});
+                return;
+            }
+            Map.Entry<Site, long[]> min = null;
+            for (final Map.Entry<Site, long[]> entry : TABLE.entrySet()) {
+                if (min == null || entry.getValue()[0] < min.getValue()[0]) {
+                    min = entry;
+                }
+            }
+            final long minCount = min.getValue()[0];
+            TABLE.remove(min.getKey());
+            TABLE.put(site, new long[]{minCount + 1, minCount});
+        }
+    }
+
+    private static boolean isSkipped(final String className) {
+        return className.startsWith("java.util.") || className.startsWith("java.lang.invoke.")
+                || className.startsWith(CallSiteSampler.class.getPackage().getName() + '.');
+    }
+
+    /**
+     * {@code StackWalker} is resolved reflectively, the runtime is compiled for java 8.
+     * {@code walk} is caller sensitive so it needs a full privilege lookup.
+     */
+    static final class Walker {
+
+        private final Object stackWalker;
+
+        private final MethodHandle walk;
+
+        private final MethodHandle className;
+
+        private final MethodHandle methodName;
+
+        private final Function<Stream<Object>, String> firstCaller = frames -> frames
+                .map(this::describe)
+                .filter(it -> !isSkipped(it))
+                .findFirst()
+                .orElse(null);
+
+        private Walker(final Object stackWalker, final MethodHandle walk, final MethodHandle className,
+                       final MethodHandle methodName) {
+            this.stackWalker = stackWalker;
+            this.walk = walk;
+            this.className = className;
+            this.methodName = methodName;
+        }
+
+        static Walker create() {
+            try {
+                final Class<?> type = Class.forName("java.lang.StackWalker");
+                final Class<?> frame = Class.forName("java.lang.StackWalker$StackFrame");
+                final MethodHandles.Lookup lookup = MethodHandles.lookup();
+                return new Walker(type.getMethod("getInstance").invoke(null),
+                        lookup.findVirtual(type, "walk", methodType(Object.class, Function.class))
+                                .asType(methodType(String.class, Object.class, Function.class)),
+                        lookup.findVirtual(frame, "getClassName", methodType(String.class))
+                                .asType(methodType(String.class, Object.class)),
+                        lookup.findVirtual(frame, "getMethodName", methodType(String.class))
+                                .asType(methodType(String.class, Object.class)));
+            } catch (final ClassNotFoundException e) { // java 8
+                return stackTrace();
+            } catch (final ReflectiveOperationException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        static Walker stackTrace() {
+            return new Walker(null, null, null, null);
+        }
+
+        boolean usesStackWalker() {
+            return stackWalker != null;
+        }
+
+        String caller() {
+            if (stackWalker == null) {
+                for (final StackTraceElement element : new Throwable().getStackTrace()) {
+                    if (!isSkipped(element.getClassName())) {
+                        return element.getClassName() + '#' + element.getMethodName();
+                    }
+                }
+                return null;
+            }
+            try {
+                return (String) walk.invokeExact(stackWalker, (Function) firstCaller);
+            } catch (final RuntimeException | Error e) {
+                throw e;
+            } catch (final Throwable e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        private String describe(final Object frame) {
+            try {
+                return (String) className.invokeExact(frame) + '#' + (String) methodName.invokeExact(frame);
+            } catch (final RuntimeException | Error e) {
+                throw e;
+            } catch (final Throwable e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    private static final class Site {
+
+        private final String caller;
+
+        private final String baseName;
+
+        private final String key;
+
+        private final int hash;
+
+        private Site(final String caller, final String baseName, final String key) {
+            this.caller = caller;
+            this.baseName = baseName;
+            this.key = key;
+            this.hash = 31 * (31 * caller.hashCode() + baseName.hashCode()) + key.hashCode();
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Site)) {
+                return false;
+            }
+            final Site other = (Site) o;
+            return caller.equals(other.caller) && baseName.equals(other.baseName) && key.equals(other.key);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,325 @@
+package com.github.rmannibucau.resourcebundle.dev.runtime;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.ResourceBundle;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.WeakHashMap;
+
+/**
+ * Weak registry of the bundles returned by {@code getBundle} per class loader to find the bundles of undeployed
+ * applications: the JDK cache keeps them (soft references) and a bundle class (or a value) of the application keeps its
+ * class loader, so its classes and statics, alive until the JVM runs short of memory.
+ *
+ * A loader is undeployed when it reports a stopped lifecycle state (Tomcat {@code getStateName()}), only these loaders are
+ * counted as leaking and evicted. A loader superseded by a newer loader of the same type, name and parent which loaded
+ * all its base names looks like a redeployment but two running sibling applications match as well, so it is only
+ * reported as suspected.
+ * Registering reads a flag of the bundle state on {@code getBundle}, the registry is only touched the first time a bundle
+ * is returned. Nothing here keeps a loader or a bundle alive, the references of the collected bundles are expunged on
+ * the next registration.
+ */
+public final class ClassLoaderRegistry {
+
+    private static final Set<String> STOPPED_STATES = new HashSet<>(Arrays.asList(
+            "STOPPING_PREP", "STOPPING", "STOPPED", "DESTROYING", "DESTROYED", "FAILED"));
+
+    // guarded by itself
+    private static final Map<ClassLoader, Loader> LOADERS = new WeakHashMap<>();
+
+    // guarded by LOADERS
+    private static final ReferenceQueue<ResourceBundle> COLLECTED = new ReferenceQueue<>();
+
+    private static volatile boolean enabled;
+
+    private static long sequence;
+
+    // ResourceBundle members, only accessible with the lookup of the instrumented class (see Linker)
+    private static volatile MethodHandle parent;
+
+    private static volatile MethodHandle state;
+
+    private static volatile Method moduleClassLoader;
+
+    private ClassLoaderRegistry() {
+        // no-op
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static synchronized void start() {
+        enabled = true;
+        Linker.relink();
+    }
+
+    static void bind(final MethodHandles.Lookup lookup) {
+        if (state != null || lookup.lookupClass() != ResourceBundle.class) {
+            return;
+        }
+        try {
+            parent = lookup.findGetter(ResourceBundle.class, "parent", ResourceBundle.class);
+            state = lookup.findGetter(ResourceBundle.class, "__agent__state", BundleState.class);
+        } catch (final NoSuchFieldException | IllegalAccessException e) { // retransformation, no state to flag
+            state = null;
+        }
+    }
+
+    // folded in the getBundle call site
+    static void onGetBundle(final ResourceBundle bundle, final String baseName, final Locale requested,
+                            final Object loaderOrModule) {
+        if (bundle == null || state == null) {
+            return;
+        }
+        try {
+            if (((BundleState) state.invokeExact(bundle)).isLoaderRegistered()) {
+                return;
+            }
+            final ClassLoader loader = loaderOf(loaderOrModule);
+            if (loader == null) { // bootstrap, never undeployed
+                return;
+            }
+            final List<ResourceBundle> chain = new ArrayList<>(4);
+            for (ResourceBundle current = bundle; current != null; current = (ResourceBundle) parent.invokeExact(current)) {
+                if (((BundleState) state.invokeExact(current)).markLoaderRegistered()) {
+                    chain.add(current);
+                }
+            }
+            register(loader, chain);
+        } catch (final RuntimeException | Error e) {
+            throw e;
+        } catch (final Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // java 8 getBundleImpl has the class loader, java 9+ the target module
+    static ClassLoader loaderOf(final Object loaderOrModule) {
+        if (loaderOrModule == null || loaderOrModule instanceof ClassLoader) {
+            return (ClassLoader) loaderOrModule;
+        }
+        try {
+            Method getClassLoader = moduleClassLoader;
+            if (getClassLoader == null) {
+                getClassLoader = loaderOrModule.getClass().getMethod("getClassLoader");
+                moduleClassLoader = getClassLoader;
+            }
+            return (ClassLoader) getClassLoader.invoke(loaderOrModule);
+        } catch (final ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static String describe(final ClassLoader loader) {
+        return loader == null ? "bootstrap" : loader.getClass().getName() + '@' + Integer.toHexString(System.identityHashCode(loader));
+    }
+
+    public static long getTrackedClassLoaders() {
+        synchronized (LOADERS) {
+            return LOADERS.size();
+        }
+    }
+
+    public static long getUndeployedClassLoaders() {
+        synchronized (LOADERS) {
+            return undeployed().size();
+        }
+    }
+
+    public static long getSuspectedClassLoaders() {
+        synchronized (LOADERS) {
+            return suspected().size();
+        }
+    }
+
+    // bundles still alive of the undeployed loaders, the early warning of a leak
+    public static long getLeakedBundles() {
+        synchronized (LOADERS) {
+            long count = 0;
+            for (final Map.Entry<ClassLoader, Loader> loader : undeployed()) {
+                count += loader.getValue().aliveBundles();
+            }
+            return count;
+        }
+    }
+
+    /**
+     * @return one line per tracked loader: description, alive bundles, status ({@code undeployed}, {@code suspected}
+     * or {@code live}) and base names, tab separated.
+     */
+    public static String[] report() {
+        synchronized (LOADERS) {
+            final Collection<Map.Entry<ClassLoader, Loader>> undeployed = undeployed();
+            final Collection<Map.Entry<ClassLoader, Loader>> suspected = suspected();
+            final Set<String> lines = new TreeSet<>();
+            for (final Map.Entry<ClassLoader, Loader> loader : LOADERS.entrySet()) {
+                final String status = undeployed.contains(loader) ? "undeployed" : (suspected.contains(loader) ? "suspected" : "live");
+                lines.add(describe(loader.getKey()) + '\t' + loader.getValue().aliveBundles() + '\t'
+                        + status + '\t' + String.join(",", loader.getValue().baseNames));
+            }
+            return lines.toArray(new String[0]);
+        }
+    }
+
+    /**
+     * Drops the JDK cache entries of the undeployed loaders, once nothing else references them their bundles and
+     * the loaders can be collected (the loader stays in the registry until then).
+     *
+     * @return the number of alive bundles of the evicted loaders.
+     */
+    public static long evictUndeployed() {
+        final List<ClassLoader> loaders = new ArrayList<>();
+        long bundles = 0;
+        synchronized (LOADERS) {
+            for (final Map.Entry<ClassLoader, Loader> loader : undeployed()) {
+                loaders.add(loader.getKey());
+                bundles += loader.getValue().aliveBundles();
+            }
+        }
+        for (final ClassLoader loader : loaders) {
+            ResourceBundle.clearCache(loader);
+        }
+        return bundles;
+    }
+
+    static void register(final ClassLoader loader, final List<ResourceBundle> bundles) {
+        synchronized (LOADERS) {
+            expunge();
+            Loader registered = LOADERS.get(loader);
+            if (registered == null) {
+                registered = new Loader(loader, ++sequence);
+                LOADERS.put(loader, registered);
+            }
+            for (final ResourceBundle bundle : bundles) {
+                registered.bundles.add(new BundleReference(bundle, registered));
+                if (bundle.getBaseBundleName() != null) {
+                    registered.baseNames.add(bundle.getBaseBundleName());
+                }
+            }
+        }
+    }
+
+    // registered references, collected or not
+    static int registeredBundles(final ClassLoader loader) {
+        synchronized (LOADERS) {
+            final Loader registered = LOADERS.get(loader);
+            return registered == null ? 0 : registered.bundles.size();
+        }
+    }
+
+    // caller holds the LOADERS lock
+    private static void expunge() {
+        for (Reference<?> collected = COLLECTED.poll(); collected != null; collected = COLLECTED.poll()) {
+            final BundleReference reference = (BundleReference) collected;
+            reference.loader.bundles.remove(reference);
+        }
+    }
+
+    // caller holds the LOADERS lock
+    private static Collection<Map.Entry<ClassLoader, Loader>> undeployed() {
+        final Map<ClassLoader, Map.Entry<ClassLoader, Loader>> result = new IdentityHashMap<>();
+        for (final Map.Entry<ClassLoader, Loader> loader : LOADERS.entrySet()) {
+            if (isStopped(loader.getKey())) {
+                result.put(loader.getKey(), loader);
+            }
+        }
+        return result.values();
+    }
+
+    // caller holds the LOADERS lock, superseded loaders which don't report a stopped state
+    private static Collection<Map.Entry<ClassLoader, Loader>> suspected() {
+        final Map<ClassLoader, Map.Entry<ClassLoader, Loader>> result = new IdentityHashMap<>();
+        for (final Map.Entry<ClassLoader, Loader> loader : LOADERS.entrySet()) {
+            if (isStopped(loader.getKey())) {
+                continue;
+            }
+            for (final Map.Entry<ClassLoader, Loader> other : LOADERS.entrySet()) {
+                if (other.getValue().supersedes(loader.getValue())) {
+                    result.put(loader.getKey(), loader);
+                    break;
+                }
+            }
+        }
+        return result.values();
+    }
+
+    private static boolean isStopped(final ClassLoader loader) {
+        try {
+            final Method getStateName = loader.getClass().getMethod("getStateName");
+            return STOPPED_STATES.contains(String.valueOf(getStateName.invoke(loader)));
+        } catch (final ReflectiveOperationException | RuntimeException e) { // not a lifecycle aware loader
+            return false;
+        }
+    }
+
+    private static final class Loader {
+
+        private final long sequence;
+
+        // not the class itself, it would keep the loader alive
+        private final String type;
+
+        private final String name;
+
+        private final WeakReference<ClassLoader> parent;
+
+        private final Set<BundleReference> bundles = new HashSet<>();
+
+        private final Set<String> baseNames = new TreeSet<>();
+
+        private Loader(final ClassLoader loader, final long sequence) {
+            this.sequence = sequence;
+            this.type = loader.getClass().getName();
+            this.name = name(loader);
+            this.parent = new WeakReference<>(loader.getParent());
+        }
+
+        // a collected parent is not a match, both references would be null
+        private boolean supersedes(final Loader other) {
+            final ClassLoader parentLoader = parent.get();
+            return sequence > other.sequence && type.equals(other.type) && parentLoader != null
+                    && parentLoader == other.parent.get()
+                    && (name == null ? other.name == null : name.equals(other.name))
+                    && !other.baseNames.isEmpty() && baseNames.containsAll(other.baseNames);
+        }
+
+        private int aliveBundles() {
+            bundles.removeIf(it -> it.get() == null);
+            return bundles.size();
+        }
+
+        // ClassLoader#getName is java 9+
+        private static String name(final ClassLoader loader) {
+            try {
+                return (String) ClassLoader.class.getMethod("getName").invoke(loader);
+            } catch (final ReflectiveOperationException e) {
+                return null;
+            }
+        }
+    }
+
+    // identity equality, the loader entry is not the class loader so it doesn't keep it alive
+    private static final class BundleReference extends WeakReference<ResourceBundle> {
+
+        private final Loader loader;
+
+        private BundleReference(final ResourceBundle bundle, final Loader loader) {
+            super(bundle, COLLECTED);
+            this.loader = loader;
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package com.github.rmannibucau.resourcebundle.dev.runtime;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Ordered decoration rules, one per line: {@code <base names> <keys> <pattern>}. The first rule matching the base name
+ * (and the key when its key matcher is not {@code *}) gives the pattern, {@code -} disables the decoration and a value
+ * no rule matches uses the global pattern. Matchers are comma separated {@link BaseNameMatcher} rules.
+ *
+ * The rules of a base name are resolved once into a {@link Resolution} the bundle state keeps, a lookup is then a field
+ * read, or a memoized key lookup when a key matcher applies to the bundle, whatever the number of rules.
+ */
+public final class DecorationRules {
+
+    static final ValueFormatter NONE = (value, bundle) -> value;
+
+    // marks a key without rule in the memo, a concurrent map can't hold null
+    private static final ValueFormatter GLOBAL_FORMATTER = (value, bundle) -> value;
+
+    // same bound as the include verdicts, base names and keys are closed sets in practice
+    private static final int MAX_RESOLUTIONS = 4096;
+
+    private static final Resolution GLOBAL = new Resolution(null, null);
+
+    private static volatile DecorationRules instance;
+
+    private final Rule[] rules;
+
+    private final ConcurrentMap<String, Resolution> resolutions = new ConcurrentHashMap<>();
+
+    private DecorationRules(final Rule[] rules) {
+        this.rules = rules;
+    }
+
+    // bundles keep their resolution, rules are set before the decoration is enabled
+    public static synchronized int configure(final Path file) throws IOException {
+        final List<Rule> rules = new ArrayList<>();
+        int lineNumber = 0;
+        for (final String line : Files.readAllLines(file, UTF_8)) {
+            lineNumber++;
+            final String trimmed = line.trim();
+            if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                continue;
+            }
+            final String[] columns = trimmed.split("\\s+", 3);
+            if (columns.length != 3) {
+                throw new IllegalArgumentException(
+                        "Invalid rule at line " + lineNumber + " of " + file + ", expected '<base names> <keys> <pattern>': " + line);
+            }
+            rules.add(new Rule(matcher(columns[0]), matcher(columns[1]),
+                    "-".equals(columns[2]) ? NONE : PatternTemplate.parse(columns[2])));
+        }
+        instance = new DecorationRules(rules.toArray(new Rule[0]));
+        return rules.size();
+    }
+
+    public static synchronized void reset() {
+        instance = null;
+    }
+
+    static Resolution resolve(final String baseName) {
+        final DecorationRules current = instance;
+        if (current == null || baseName == null) {
+            return GLOBAL;
+        }
+        final Resolution existing = current.resolutions.get(baseName);
+        if (existing != null) {
+            return existing;
+        }
+        final Resolution resolution = current.compute(baseName);
+        if (current.resolutions.size() < MAX_RESOLUTIONS) {
+            current.resolutions.putIfAbsent(baseName, resolution);
+        }
+        return resolution;
+    }
+
+    // keeps the rules matching the base name up to the first one without key matcher, the next ones are unreachable
+    private Resolution compute(final String baseName) {
+        final List<Rule> candidates = new ArrayList<>();
+        for (final Rule rule : rules) {
+            if (rule.baseNames == null || rule.baseNames.matches(baseName)) {
+                candidates.add(rule);
+                if (rule.keys == null) {
+                    break;
+                }
+            }
+        }
+        if (candidates.isEmpty()) {
+            return GLOBAL;
+        }
+        if (candidates.get(0).keys == null) {
+            return new Resolution(candidates.get(0).formatter, null);
+        }
+        return new Resolution(null, candidates.toArray(new Rule[0]));
+    }
+
+    private static BaseNameMatcher matcher(final String column) {
+        return "*".equals(column) ? null : BaseNameMatcher.compile(Arrays.asList(column.split(",")));
+    }
+
+    /**
+     * Formatter of the values of one base name: the rule pattern, {@link #NONE} or null for the global pattern.
+     */
+    static final class Resolution {
+
+        private final ValueFormatter formatter;
+
+        private final Rule[] keyRules;
+
+        private final ConcurrentMap<String, ValueFormatter> byKey;
+
+        private Resolution(final ValueFormatter formatter, final Rule[] keyRules) {
+            this.formatter = formatter;
+            this.keyRules = keyRules;
+            this.byKey = keyRules == null ? null : new ConcurrentHashMap<>();
+        }
+
+        ValueFormatter forKey(final String key) {
+            if (keyRules == null) {
+                return formatter;
+            }
+            final ValueFormatter existing = byKey.get(key);
+            if (existing != null) {
+                return existing == GLOBAL_FORMATTER ? null : existing;
+            }
+            ValueFormatter resolved = GLOBAL_FORMATTER;
+            for (final Rule rule : keyRules) {
+                if (rule.keys == null || rule.keys.matches(key)) {
+                    resolved = rule.formatter;
+                    break;
+                }
+            }
+            if (byKey.size() < MAX_RESOLUTIONS) {
+                byKey.putIfAbsent(key, resolved);
+            }
+            return resolved == GLOBAL_FORMATTER ? null : resolved;
+        }
+    }
+
+    private static final class Rule {
+
+        private final BaseNameMatcher baseNames;
+
+        private final BaseNameMatcher keys;
+
+        private final ValueFormatter formatter;
+
+        private Rule(final BaseNameMatcher baseNames, final BaseNameMatcher keys, final ValueFormatter formatter) {
+            this.baseNames = baseNames;
+            this.keys = keys;
+            this.formatter = formatter;
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.github.rmannibucau.resourcebundle.dev.runtime;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Decorates the lookups of the current thread only, for instance in a servlet filter for a debug header:
+ *
+ * {@code
+ * try (DecorationScope scope = DecorationScope.open()) {
+ *     chain.doFilter(request, response);
+ * }
+ * }
+ *
+ * This class is on the bootstrap class path when the agent runs ({@code scoped=true} restricts the decoration to the
+ * scopes), applications compile against the agent jar and must not package it.
+ * Scoped threads are the weak keys of a concurrent map (compared by identity) with their nesting depth:
+ * without any open scope a lookup only reads the open scope counter, otherwise it is one map lookup whatever the number
+ * of scoped threads. There is no {@code ThreadLocal} so virtual threads (or any other thread) pay nothing more and a
+ * scope follows the thread it was opened on, not its carrier. A thread ending with an open scope is dropped, with its
+ * depth from the counter, once collected.
+ * A scope must be closed on the thread which opened it, {@link #wrap(Runnable)} opens one on the thread running a task.
+ */
+public final class DecorationScope implements AutoCloseable {
+
+    // thread -> nesting depth
+    private static final ConcurrentMap<ThreadKey, Integer> THREADS = new ConcurrentHashMap<>();
+
+    private static final ReferenceQueue<Thread> ENDED = new ReferenceQueue<>();
+
+    // incremented before a thread is added and decremented after it is removed, zero means no scoped thread
+    private static final AtomicInteger OPEN = new AtomicInteger();
+
+    private final Thread thread;
+
+    private boolean closed;
+
+    private DecorationScope(final Thread thread) {
+        this.thread = thread;
+    }
+
+    public static DecorationScope open() {
+        final Thread current = Thread.currentThread();
+        add(current);
+        return new DecorationScope(current);
+    }
+
+    /**
+     * @return a task decorating the lookups of the thread executing it (an executor thread for instance).
+     */
+    public static Runnable wrap(final Runnable task) {
+        return () -> {
+            final DecorationScope scope = open();
+            try {
+                task.run();
+            } finally {
+                scope.close();
+            }
+        };
+    }
+
+    public static <T> Callable<T> wrap(final Callable<T> task) {
+        return () -> {
+            final DecorationScope scope = open();
+            try {
+                return task.call();
+            } finally {
+                scope.close();
+            }
+        };
+    }
+
+    public static boolean isDecorated() {
+        if (OPEN.get() == 0) { // production path: one field read
+            return false;
+        }
+        expunge();
+        return THREADS.containsKey(new ThreadKey(Thread.currentThread(), null));
+    }
+
+    static int getOpenScopes() {
+        expunge();
+        return OPEN.get();
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        if (Thread.currentThread() != thread) {
+            throw new IllegalStateException("Scope opened by " + thread + " closed by " + Thread.currentThread());
+        }
+        closed = true;
+        remove(thread);
+    }
+
+    private static void add(final Thread thread) {
+        expunge();
+        OPEN.incrementAndGet();
+        THREADS.merge(new ThreadKey(thread, ENDED), 1, Integer::sum);
+    }
+
+    private static void remove(final Thread thread) {
+        THREADS.computeIfPresent(new ThreadKey(thread, null), (key, depth) -> depth == 1 ? null : depth - 1);
+        OPEN.decrementAndGet();
+    }
+
+    // scopes left open by collected threads
+    private static void expunge() {
+        for (Reference<?> collected = ENDED.poll(); collected != null; collected = ENDED.poll()) {
+            final Integer depth = THREADS.remove(collected);
+            if (depth != null) {
+                OPEN.addAndGet(-depth);
+            }
+        }
+    }
+
+    private static final class ThreadKey extends WeakReference<Thread> {
+
+        private final int hash;
+
+        private ThreadKey(final Thread thread, final ReferenceQueue<Thread> queue) {
+            super(thread, queue);
+            this.hash = System.identityHashCode(thread);
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof ThreadKey)) {
+                return false;
+            }
+            final Thread thread = get();
+            return thread != null && thread == ((ThreadKey) o).get();
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
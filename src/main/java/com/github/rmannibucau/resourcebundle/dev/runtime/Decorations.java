@@ -0,0 +1,130 @@
+package com.github.rmannibucau.resourcebundle.dev.runtime;
+
+import java.util.ResourceBundle;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Decoration logic, only reached through the {@link Linker} call sites when the agent is active.
+ */
+public final class Decorations {
+
+    private static volatile ValueFormatter formatter;
+
+    private static volatile boolean cacheEnabled;
+
+    private Decorations() {
+        // no-op
+    }
+
+    public static void configure(final ValueFormatter formatter, final boolean cacheEnabled) {
+        Decorations.formatter = formatter;
+        Decorations.cacheEnabled = cacheEnabled;
+    }
+
+    static boolean isCacheEnabled() {
+        return cacheEnabled;
+    }
+
+    /**
+     * -javaagent mode: {@code value} is the result of the original getObject (parent chain included).
+     */
+    static Object decorate(final ResourceBundle bundle, final BundleState state, final String key, final Object value) {
+        if (!state.isInstrumented(bundle)) {
+            return value;
+        }
+        final ConcurrentMap<String, Object> cache = state.getCache(); // before the formatter, see BundleState
+        final ValueFormatter current = formatter(formatter, state.getRules(bundle), key);
+        if (current == null) {
+            return value;
+        }
+        final long start = System.nanoTime();
+        final Object decorated;
+        if (cache == null) {
+            decorated = format(value, bundle, current);
+        } else {
+            final Object cached = cache.get(key);
+            if (cached != null) {
+                DevState.onCacheHit();
+                decorated = cached;
+            } else {
+                DevState.onCacheMiss();
+                final Object formatted = format(value, bundle, current);
+                final Object existing = cache.putIfAbsent(key, formatted);
+                decorated = existing != null ? existing : formatted;
+            }
+        }
+        DevState.onDecorated(start);
+        return decorated;
+    }
+
+    // scoped=true: only the threads in a DecorationScope are decorated
+    static Object decorateScoped(final ResourceBundle bundle, final BundleState state, final String key, final Object value) {
+        return DecorationScope.isDecorated() ? decorate(bundle, state, key, value) : value;
+    }
+
+    /**
+     * Attach mode: a retransformation can't add members so there is no bundle state,
+     * {@code value} is the result of the bundle own {@code handleGetObject}.
+     */
+    static Object decorateOwnValue(final Object value, final ResourceBundle bundle, final String key) {
+        final ValueFormatter global = formatter;
+        if (value == null || global == null) {
+            return value;
+        }
+        final String baseName = bundle.getBaseBundleName();
+        if (baseName == null || !IncludeFilter.isIncluded(baseName)) { // not loaded through getBundle
+            return value;
+        }
+        final ValueFormatter current = formatter(global, DecorationRules.resolve(baseName), key);
+        if (current == null) {
+            return value;
+        }
+        final long start = System.nanoTime();
+        final Object decorated = format(value, bundle, current);
+        DevState.onDecorated(start);
+        return decorated;
+    }
+
+    static Object decorateOwnValueScoped(final Object value, final ResourceBundle bundle, final String key) {
+        return DecorationScope.isDecorated() ? decorateOwnValue(value, bundle, key) : value;
+    }
+
+    // evaluates the verdict and the rules once when the bundle is loaded (JDK cache miss) instead of on its first lookup
+    static void onLoad(final ResourceBundle bundle, final BundleState state) {
+        if (state.isInstrumented(bundle)) {
+            state.getRules(bundle);
+        }
+    }
+
+    // the rule of the key when one matches, null when it disables the decoration
+    private static ValueFormatter formatter(final ValueFormatter global, final DecorationRules.Resolution rules,
+                                            final String key) {
+        if (global == null) {
+            return null;
+        }
+        final ValueFormatter rule = rules.forKey(key);
+        if (rule == null) {
+            return global;
+        }
+        return rule == DecorationRules.NONE ? null : rule;
+    }
+
+    private static Object format(final Object value, final ResourceBundle bundle, final ValueFormatter current) {
+        if (value instanceof String) {
+            final String decorated = current.format((String) value, bundle);
+            if (MessageFormats.isEnabled()) {
+                MessageFormats.onDecorated((String) value, decorated, bundle, current);
+            }
+            return decorated;
+        }
+        if (value instanceof String[]) {
+            final String[] values = (String[]) value;
+            final String[] formatted = new String[values.length];
+            for (int i = 0; i < values.length; i++) {
+                formatted[i] = current.format(values[i], bundle);
+            }
+            return formatted;
+        }
+        return value;
+    }
+}
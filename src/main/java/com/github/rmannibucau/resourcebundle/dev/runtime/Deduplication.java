@@ -0,0 +1,329 @@
+package com.github.rmannibucau.resourcebundle.dev.runtime;
+
+import java.io.IOException;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Field;
+import java.nio.file.Path;
+import java.util.ListResourceBundle;
+import java.util.Map;
+import java.util.PropertyResourceBundle;
+import java.util.ResourceBundle;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Canonicalizes the string values of the included bundles when they are loaded (JDK cache miss) so a value repeated
+ * across locales and bundles (brand names, untranslated values) is retained once.
+ * The intern table only holds weak references: a canonical value is collected with the last bundle using it.
+ * {@code PropertyResourceBundle} and {@code ListResourceBundle} values are replaced in their lookup map before the
+ * bundle is published in the JDK cache, the agent bundles ({@link MappedPropertiesBundle}, {@link BinaryBundle})
+ * canonicalize a value when they decode it. Other bundle types are not reported.
+ *
+ * Footprints are per bundle instance (two class loaders or a reload give distinct instances), weakly referenced, and
+ * summed per base name and locale in the report. Both tables are concurrent: loads and decodes never take a lock.
+ *
+ * Sizes are estimated from the string lengths (compressed oops, compact strings on java 9+), they are meant to compare
+ * bundles and locales, a heap dump stays the reference.
+ */
+public final class Deduplication {
+
+    private static final boolean COMPACT_STRINGS = !System.getProperty("java.specification.version").startsWith("1.");
+
+    // canonical value -> its key, compared with equals
+    private static final ConcurrentMap<WeakKey<String>, WeakKey<String>> TABLE = new ConcurrentHashMap<>();
+
+    private static final ReferenceQueue<String> COLLECTED_VALUES = new ReferenceQueue<>();
+
+    // bundle instance, compared by identity
+    private static final ConcurrentMap<WeakKey<ResourceBundle>, Footprint> FOOTPRINTS = new ConcurrentHashMap<>();
+
+    private static final ReferenceQueue<ResourceBundle> COLLECTED_BUNDLES = new ReferenceQueue<>();
+
+    private static final LongAdder SAVED_BYTES = new LongAdder();
+
+    private static volatile boolean enabled;
+
+    private static Path reportFile;
+
+    private static volatile Field propertiesLookup;
+
+    private static volatile Field listLookup;
+
+    private Deduplication() {
+        // no-op
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static synchronized Path getReportFile() {
+        return reportFile;
+    }
+
+    public static long getSavedBytes() {
+        return SAVED_BYTES.sum();
+    }
+
+    public static synchronized void start(final Path file) {
+        try {
+            propertiesLookup = lookupField(PropertyResourceBundle.class);
+            listLookup = lookupField(ListResourceBundle.class);
+        } catch (final NoSuchFieldException | RuntimeException e) { // only the agent bundles are deduplicated
+            e.printStackTrace(); // no logger
+        }
+        reportFile = file;
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                write();
+            } catch (final IOException | RuntimeException e) {
+                e.printStackTrace(); // no logger
+            }
+        }, "resource-bundle-dev-deduplication-shutdown"));
+        enabled = true;
+        Linker.relink();
+    }
+
+    // folded in the bundleLoaded call site
+    static void onLoad(final ResourceBundle bundle, final BundleState state) {
+        if (!state.isInstrumented(bundle)) {
+            return;
+        }
+        final Map<String, Object> lookup = lookup(bundle);
+        final int lazyEntries; // agent bundles count their values when they decode them
+        if (bundle instanceof MappedPropertiesBundle) {
+            lazyEntries = ((MappedPropertiesBundle) bundle).size();
+        } else if (bundle instanceof BinaryBundle) {
+            lazyEntries = ((BinaryBundle) bundle).size();
+        } else if (lookup == null) {
+            return;
+        } else {
+            lazyEntries = 0;
+        }
+        expunge(COLLECTED_BUNDLES, FOOTPRINTS);
+        final Footprint footprint = new Footprint(BundleId.of(bundle));
+        FOOTPRINTS.put(new WeakKey<>(bundle, true, COLLECTED_BUNDLES), footprint);
+        if (lookup == null) {
+            footprint.entries.add(lazyEntries);
+            return;
+        }
+        for (final Map.Entry<String, Object> entry : lookup.entrySet()) {
+            final Object value = entry.getValue();
+            final Object canonical = footprint.add(entry.getKey(), value);
+            if (canonical != value) {
+                entry.setValue(canonical);
+            }
+        }
+    }
+
+    // first decode of an agent bundle value
+    static Object onDecode(final ResourceBundle bundle, final String value) {
+        if (!enabled) {
+            return value;
+        }
+        final Footprint footprint = FOOTPRINTS.get(new WeakKey<>(bundle, true, null));
+        return footprint == null ? value : footprint.add(null, value);
+    }
+
+    public static synchronized void write() throws IOException {
+        if (reportFile == null) {
+            throw new IllegalStateException("Deduplication not started");
+        }
+        expunge(COLLECTED_BUNDLES, FOOTPRINTS);
+        expunge(COLLECTED_VALUES, TABLE);
+        // entries, retained and saved bytes of the live instances of each bundle
+        final Map<String, long[]> bundles = new TreeMap<>();
+        for (final Map.Entry<WeakKey<ResourceBundle>, Footprint> bundle : FOOTPRINTS.entrySet()) {
+            if (bundle.getKey().get() == null) {
+                continue;
+            }
+            final Footprint footprint = bundle.getValue();
+            final long saved = footprint.saved.sum();
+            final long[] sums = bundles.computeIfAbsent(
+                    ReportFiles.escape(footprint.id.baseName) + '\t' + footprint.id.locale, k -> new long[3]);
+            sums[0] += footprint.entries.sum();
+            sums[1] += footprint.keys.sum() + footprint.values.sum() - saved;
+            sums[2] += saved;
+        }
+        final int canonicalValues = TABLE.size();
+        ReportFiles.write(reportFile, writer -> {
+            writer.write("# bundle: base, locale, entries, retained bytes, saved bytes");
+            writer.newLine();
+            long entries = 0;
+            long retained = 0;
+            long saved = 0;
+            for (final Map.Entry<String, long[]> bundle : bundles.entrySet()) {
+                final long[] sums = bundle.getValue();
+                writer.write("bundle\t" + bundle.getKey() + '\t' + sums[0] + '\t' + sums[1] + '\t' + sums[2]);
+                writer.newLine();
+                entries += sums[0];
+                retained += sums[1];
+                saved += sums[2];
+            }
+            writer.write("# total: entries, retained bytes, saved bytes, canonical values");
+            writer.newLine();
+            writer.write("total\t" + entries + '\t' + retained + '\t' + saved + '\t' + canonicalValues);
+            writer.newLine();
+        });
+    }
+
+    private static String intern(final String value) {
+        expunge(COLLECTED_VALUES, TABLE);
+        final WeakKey<String> key = new WeakKey<>(value, false, COLLECTED_VALUES);
+        while (true) {
+            final WeakKey<String> existing = TABLE.putIfAbsent(key, key);
+            if (existing == null) {
+                return value;
+            }
+            final String canonical = existing.get();
+            if (canonical != null) {
+                return canonical;
+            }
+            TABLE.remove(existing, existing); // collected since the lookup
+        }
+    }
+
+    private static void expunge(final ReferenceQueue<?> queue, final Map<?, ?> table) {
+        for (Reference<?> collected = queue.poll(); collected != null; collected = queue.poll()) {
+            table.remove(collected);
+        }
+    }
+
+    // ListResourceBundle builds its lookup on first use, getKeys() forces it
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> lookup(final ResourceBundle bundle) {
+        final Field field;
+        if (bundle instanceof PropertyResourceBundle) {
+            field = propertiesLookup;
+        } else if (bundle instanceof ListResourceBundle) {
+            field = listLookup;
+            if (field != null) {
+                bundle.getKeys();
+            }
+        } else {
+            return null;
+        }
+        if (field == null) {
+            return null;
+        }
+        try {
+            return (Map<String, Object>) field.get(bundle);
+        } catch (final IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // java 9+: accessible because BootstrapRuntime opens java.util to the runtime
+    private static Field lookupField(final Class<?> type) throws NoSuchFieldException {
+        final Field field = type.getDeclaredField("lookup");
+        field.setAccessible(true);
+        return field;
+    }
+
+    // String object (header, hash, array reference) and its array (header, length, content) aligned on 8 bytes
+    static long sizeOf(final String value) {
+        int bytesPerChar = 2;
+        if (COMPACT_STRINGS) {
+            bytesPerChar = 1;
+            for (int i = 0; i < value.length(); i++) {
+                if (value.charAt(i) > 0xFF) {
+                    bytesPerChar = 2;
+                    break;
+                }
+            }
+        }
+        return 24 + align(16L + (long) value.length() * bytesPerChar);
+    }
+
+    private static long align(final long size) {
+        return (size + 7) & ~7L;
+    }
+
+    private static final class Footprint {
+
+        private final BundleId id;
+
+        private final LongAdder entries = new LongAdder();
+
+        private final LongAdder keys = new LongAdder();
+
+        private final LongAdder values = new LongAdder();
+
+        private final LongAdder saved = new LongAdder();
+
+        private Footprint(final BundleId id) {
+            this.id = id;
+        }
+
+        // a null key is a lazily decoded value of an already counted entry, arrays elements are canonicalized in place
+        private Object add(final String key, final Object value) {
+            if (key != null) {
+                entries.increment();
+                keys.add(sizeOf(key));
+            }
+            if (value instanceof String) {
+                return addString((String) value);
+            }
+            if (value instanceof String[]) {
+                final String[] array = (String[]) value;
+                values.add(align(16L + 4L * array.length));
+                for (int i = 0; i < array.length; i++) {
+                    if (array[i] != null) {
+                        array[i] = addString(array[i]);
+                    }
+                }
+            }
+            return value;
+        }
+
+        private String addString(final String value) {
+            final long size = sizeOf(value);
+            values.add(size);
+            final String canonical = intern(value);
+            if (canonical != value) {
+                saved.add(size);
+                SAVED_BYTES.add(size);
+            }
+            return canonical;
+        }
+    }
+
+    /**
+     * Weak key of the concurrent tables comparing the referents by identity (bundles) or with equals (values),
+     * a collected key is only equal to itself so it is removed when its queue is polled.
+     */
+    private static final class WeakKey<T> extends WeakReference<T> {
+
+        private final boolean identity;
+
+        private final int hash;
+
+        private WeakKey(final T referent, final boolean identity, final ReferenceQueue<? super T> queue) {
+            super(referent, queue);
+            this.identity = identity;
+            this.hash = identity ? System.identityHashCode(referent) : referent.hashCode();
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof WeakKey)) {
+                return false;
+            }
+            final Object referent = get();
+            final Object other = ((WeakKey<?>) o).get();
+            return referent != null && (identity ? referent == other : referent.equals(other));
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.github.rmannibucau.resourcebundle.dev.runtime;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Locale;
+import java.util.PropertyResourceBundle;
+import java.util.ResourceBundle;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Wraps the JDK control passed to {@code getBundleImpl} for included bundles. In place of the
+ * {@code .properties} lookup it loads the compiled {@code .rbd} file of the base name as a {@link BinaryBundle}
+ * when binary bundles are enabled and it has the requested locale, then the {@code .properties} file as a
+ * {@link MappedPropertiesBundle} when mapped properties are enabled.
+ * Files are read in a heap buffer, never mapped: plain files are usually {@code target/classes} or exploded archives
+ * an IDE or an incremental build rewrites while the application runs and a rewritten mapped file crashes the JVM.
+ * When {@link BundleWatcher} runs, {@code .properties} of the watched directories come first and the time to live
+ * and reload checks are the watcher ones.
+ * Everything else, including the other formats, is delegated. Custom controls are never wrapped.
+ */
+public final class DevControl extends ResourceBundle.Control {
+
+    private static final ConcurrentMap<ResourceBundle.Control, DevControl> WRAPPERS = new ConcurrentHashMap<>();
+
+    private static volatile boolean mappedProperties;
+
+    private static volatile boolean binaryBundles;
+
+    private final ResourceBundle.Control delegate;
+
+    private DevControl(final ResourceBundle.Control delegate) {
+        this.delegate = delegate;
+    }
+
+    public static boolean isEnabled() {
+        return mappedProperties || binaryBundles || BundleWatcher.isWatching();
+    }
+
+    public static void setMappedProperties(final boolean enabled) {
+        mappedProperties = enabled;
+        Linker.relink();
+    }
+
+    public static void setBinaryBundles(final boolean enabled) {
+        binaryBundles = enabled;
+        Linker.relink();
+    }
+
+    // JDK controls are singletons so the map stays tiny and getBundle doesn't allocate
+    static ResourceBundle.Control wrap(final String baseName, final ResourceBundle.Control control) {
+        if (baseName == null || control == null || control instanceof DevControl || control.getClass().getClassLoader() != null
+                || !IncludeFilter.isIncluded(baseName)) {
+            return control;
+        }
+        return WRAPPERS.computeIfAbsent(control, DevControl::new);
+    }
+
+    @Override
+    public ResourceBundle newBundle(final String baseName, final Locale locale, final String format,
+                                    final ClassLoader loader, final boolean reload)
+            throws IllegalAccessException, InstantiationException, IOException {
+        if (!"java.properties".equals(format)) {
+            return delegate.newBundle(baseName, locale, format, loader, reload);
+        }
+        final String bundleName = toBundleName(baseName, locale);
+        final Path source = BundleWatcher.findSource(toResourceName(bundleName, "properties"));
+        if (source != null) {
+            final ByteBuffer content = ByteBuffer.wrap(Files.readAllBytes(source));
+            return mappedProperties
+                    ? new MappedPropertiesBundle(content)
+                    : new PropertyResourceBundle(new ByteArrayInputStream(content.array()));
+        }
+        if (binaryBundles) {
+            final URL url = find(loader, toResourceName(baseName, BinaryBundle.EXTENSION));
+            if (url != null) {
+                // the suffix of the bundle name is the one of the file name the section was compiled from
+                final String localeName = bundleName.length() > baseName.length() && bundleName.startsWith(baseName + '_')
+                        ? bundleName.substring(baseName.length() + 1) : "";
+                final BinaryBundle bundle = BinaryBundle.open(read(url, reload), localeName);
+                if (bundle != null) {
+                    return bundle;
+                }
+            }
+        }
+        if (!mappedProperties) {
+            return delegate.newBundle(baseName, locale, format, loader, reload);
+        }
+        final URL url = find(loader, toResourceName(bundleName, "properties"));
+        if (url == null) {
+            return null;
+        }
+        return new MappedPropertiesBundle(read(url, reload));
+    }
+
+    private static URL find(final ClassLoader loader, final String resourceName) {
+        return loader == null ? ClassLoader.getSystemResource(resourceName) : loader.getResource(resourceName);
+    }
+
+    private static ByteBuffer read(final URL url, final boolean reload) throws IOException {
+        if ("file".equals(url.getProtocol())) { // no url connection cache to bypass
+            try {
+                return ByteBuffer.wrap(Files.readAllBytes(Paths.get(url.toURI())));
+            } catch (final URISyntaxException | IllegalArgumentException e) {
+                // not a plain path, read it as any other url
+            }
+        }
+        final URLConnection connection = url.openConnection();
+        connection.setUseCaches(!reload);
+        try (final InputStream stream = connection.getInputStream()) {
+            byte[] buffer = new byte[Math.max(1024, connection.getContentLength())];
+            int length = 0;
+            int read;
+            while ((read = stream.read(buffer, length, buffer.length - length)) >= 0) {
+                length += read;
+                if (length == buffer.length) {
+                    final byte[] bigger = new byte[buffer.length * 2];
+                    System.arraycopy(buffer, 0, bigger, 0, length);
+                    buffer = bigger;
+                }
+            }
+            return ByteBuffer.wrap(buffer, 0, length).slice();
+        }
+    }
+
+    @Override
+    public List<String> getFormats(final String baseName) {
+        return delegate.getFormats(baseName);
+    }
+
+    @Override
+    public List<Locale> getCandidateLocales(final String baseName, final Locale locale) {
+        return delegate.getCandidateLocales(baseName, locale);
+    }
+
+    @Override
+    public Locale getFallbackLocale(final String baseName, final Locale locale) {
+        return delegate.getFallbackLocale(baseName, locale);
+    }
+
+    @Override
+    public long getTimeToLive(final String baseName, final Locale locale) {
+        return BundleWatcher.isWatching() ? BundleWatcher.getDelay() : delegate.getTimeToLive(baseName, locale);
+    }
+
+    @Override
+    public boolean needsReload(final String baseName, final Locale locale, final String format, final ClassLoader loader,
+                               final ResourceBundle bundle, final long loadTime) {
+        if (BundleWatcher.isWatching()) {
+            return BundleWatcher.isChanged(baseName, toBundleName(baseName, locale), loadTime);
+        }
+        return delegate.needsReload(baseName, locale, format, loader, bundle, loadTime);
+    }
+
+    @Override
+    public String toBundleName(final String baseName, final Locale locale) {
+        return delegate.toBundleName(baseName, locale);
+    }
+}
@@ -0,0 +1,105 @@
+package com.github.rmannibucau.resourcebundle.dev.runtime;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Mutable state shared by the decorations,
+ * only volatile reads and striped counters so the hot path never takes a lock.
+ */
+public final class DevState {
+
+    private static final LongAdder DECORATED_LOOKUPS = new LongAdder();
+
+    private static final LongAdder INSTRUMENTED_BUNDLES = new LongAdder();
+
+    private static final LongAdder FORMATTING_NANOS = new LongAdder();
+
+    private static final LongAdder CACHE_HITS = new LongAdder();
+
+    private static final LongAdder CACHE_MISSES = new LongAdder();
+
+    private static volatile boolean active;
+
+    private static volatile boolean scoped;
+
+    private static volatile int cacheGeneration;
+
+    private DevState() {
+        // no-op
+    }
+
+    public static boolean isActive() {
+        return active;
+    }
+
+    // the flag is not read on the lookup path, the call sites are relinked instead
+    public static void setActive(final boolean active) {
+        DevState.active = active;
+        Linker.relink();
+    }
+
+    public static boolean isScoped() {
+        return scoped;
+    }
+
+    // decorates only the threads in a DecorationScope, relinked as the active flag
+    public static void setScoped(final boolean scoped) {
+        DevState.scoped = scoped;
+        Linker.relink();
+    }
+
+    public static int cacheGeneration() {
+        return cacheGeneration;
+    }
+
+    // only called by clearCache() and reconfigurations, contention is not a concern
+    public static synchronized void invalidateCaches() {
+        cacheGeneration++;
+        MessageFormats.clear();
+    }
+
+    public static void onDecorated(final long start) {
+        FORMATTING_NANOS.add(System.nanoTime() - start);
+        DECORATED_LOOKUPS.increment();
+    }
+
+    public static void onInstrumented() {
+        INSTRUMENTED_BUNDLES.increment();
+    }
+
+    public static void onCacheHit() {
+        CACHE_HITS.increment();
+    }
+
+    public static void onCacheMiss() {
+        CACHE_MISSES.increment();
+    }
+
+    public static long getDecoratedLookups() {
+        return DECORATED_LOOKUPS.sum();
+    }
+
+    public static long getInstrumentedBundles() {
+        return INSTRUMENTED_BUNDLES.sum();
+    }
+
+    public static long getFormattingNanos() {
+        return FORMATTING_NANOS.sum();
+    }
+
+    public static long getCacheHits() {
+        return CACHE_HITS.sum();
+    }
+
+    public static long getCacheMisses() {
+        return CACHE_MISSES.sum();
+    }
+
+    public static void resetCounters() {
+        DECORATED_LOOKUPS.reset();
+        INSTRUMENTED_BUNDLES.reset();
+        FORMATTING_NANOS.reset();
+        CACHE_HITS.reset();
+        CACHE_MISSES.reset();
+    }
+}
@@ -0,0 +1,196 @@
+package com.github.rmannibucau.resourcebundle.dev.runtime;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Map;
+import java.util.ResourceBundle;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Records which bundle of the parent chain answered each key of an included bundle.
+ * A (bundle name, locale, key) is resolved once: the first lookup walks the chain again to find the owner,
+ * next ones are a lock free map read. {@code getBundle} calls returning a bundle of another locale than the requested
+ * one are recorded too since the JDK already fell back before the parent chain is involved.
+ */
+public final class Fallbacks {
+
+    private static final ConcurrentMap<BundleId, ConcurrentMap<String, Resolution>> RESOLUTIONS = new ConcurrentHashMap<>();
+
+    private static final Set<String> BUNDLE_FALLBACKS = ConcurrentHashMap.newKeySet();
+
+    private static volatile boolean enabled;
+
+    private static Path reportFile;
+
+    // ResourceBundle members, only accessible with the lookup of the instrumented class (see Linker)
+    private static volatile MethodHandle parent;
+
+    private static volatile MethodHandle handleGetObject;
+
+    private Fallbacks() {
+        // no-op
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static synchronized Path getReportFile() {
+        return reportFile;
+    }
+
+    public static synchronized void start(final Path file) {
+        reportFile = file;
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                write();
+            } catch (final IOException | RuntimeException e) {
+                e.printStackTrace(); // no logger
+            }
+        }, "resource-bundle-dev-fallbacks-shutdown"));
+        enabled = true;
+        Linker.relink();
+    }
+
+    static void bind(final MethodHandles.Lookup lookup) {
+        if (parent != null || lookup.lookupClass() != ResourceBundle.class) {
+            return;
+        }
+        try {
+            handleGetObject = lookup.findVirtual(ResourceBundle.class, "handleGetObject",
+                    MethodType.methodType(Object.class, String.class));
+            parent = lookup.findGetter(ResourceBundle.class, "parent", ResourceBundle.class);
+        } catch (final NoSuchMethodException | NoSuchFieldException | IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static void onGetBundle(final ResourceBundle bundle, final String baseName, final Locale requested) {
+        if (bundle != null && baseName != null && requested != null && !requested.equals(bundle.getLocale())
+                && IncludeFilter.isIncluded(baseName)) {
+            BUNDLE_FALLBACKS.add(ReportFiles.escape(baseName) + '\t' + requested + '\t' + BundleId.localeName(bundle.getLocale()));
+        }
+    }
+
+    static void record(final ResourceBundle bundle, final BundleState state, final String key, final Object value) {
+        if (!state.isInstrumented(bundle)) {
+            return;
+        }
+        final ConcurrentMap<String, Resolution> resolutions = state.getResolutions(bundle);
+        if (resolutions.get(key) == null) {
+            resolutions.putIfAbsent(key, resolve(bundle, key));
+        }
+    }
+
+    static ConcurrentMap<String, Resolution> register(final ResourceBundle bundle) {
+        return RESOLUTIONS.computeIfAbsent(BundleId.of(bundle), k -> new ConcurrentHashMap<>());
+    }
+
+    // the resolutions of a reloaded bundle (Control#toBundleName) and of its children are computed again,
+    // the name is split on each recorded base name: app.messages_extra is not a locale of app.messages
+    static void invalidate(final String bundleName) {
+        RESOLUTIONS.keySet().removeIf(id -> {
+            if (bundleName.equals(id.baseName)) { // root bundle, every locale is a child
+                return true;
+            }
+            if (!bundleName.startsWith(id.baseName) || bundleName.charAt(id.baseName.length()) != '_') {
+                return false;
+            }
+            final String locale = bundleName.substring(id.baseName.length() + 1);
+            return id.locale.equals(locale) || id.locale.startsWith(locale + '_');
+        });
+    }
+
+    // a compiled bundle holds every locale of its base name
+    static void invalidateAll(final String baseName) {
+        RESOLUTIONS.keySet().removeIf(id -> id.baseName.equals(baseName));
+    }
+
+    public static synchronized void write() throws IOException {
+        if (reportFile == null) {
+            throw new IllegalStateException("Fallback tracking not started");
+        }
+        final Map<String, int[]> depths = new TreeMap<>();
+        final Map<String, String> keys = new TreeMap<>();
+        for (final Map.Entry<BundleId, ConcurrentMap<String, Resolution>> bundle : RESOLUTIONS.entrySet()) {
+            final String prefix = ReportFiles.escape(bundle.getKey().baseName) + '\t' + bundle.getKey().locale;
+            int[] histogram = new int[1];
+            for (final Map.Entry<String, Resolution> key : bundle.getValue().entrySet()) {
+                final Resolution resolution = key.getValue();
+                if (histogram.length <= resolution.depth) {
+                    final int[] bigger = new int[resolution.depth + 1];
+                    System.arraycopy(histogram, 0, bigger, 0, histogram.length);
+                    histogram = bigger;
+                }
+                histogram[resolution.depth]++;
+                if (resolution.depth > 0) {
+                    keys.put(prefix + '\t' + ReportFiles.escape(key.getKey()),
+                            resolution.locale + '\t' + resolution.depth);
+                }
+            }
+            depths.put(prefix, histogram);
+        }
+
+        ReportFiles.write(reportFile, writer -> {
+            writer.write("# getBundle: base, requested locale, loaded locale");
+            writer.newLine();
+            for (final String fallback : new TreeSet<>(BUNDLE_FALLBACKS)) {
+                writer.write("getBundle\t" + fallback);
+                writer.newLine();
+            }
+            writer.write("# depth: base, locale, resolved keys per depth (0 is the bundle itself)");
+            writer.newLine();
+            for (final Map.Entry<String, int[]> depth : depths.entrySet()) {
+                final StringBuilder histogram = new StringBuilder();
+                for (final int count : depth.getValue()) {
+                    histogram.append(histogram.length() == 0 ? "" : ",").append(count);
+                }
+                writer.write("depth\t" + depth.getKey() + '\t' + histogram);
+                writer.newLine();
+            }
+            writer.write("# key: base, locale, key, answering locale, depth");
+            writer.newLine();
+            for (final Map.Entry<String, String> key : keys.entrySet()) {
+                writer.write("key\t" + key.getKey() + '\t' + key.getValue());
+                writer.newLine();
+            }
+        });
+    }
+
+    private static Resolution resolve(final ResourceBundle bundle, final String key) {
+        try {
+            int depth = 0;
+            for (ResourceBundle current = bundle; current != null; current = (ResourceBundle) parent.invokeExact(current)) {
+                if ((Object) handleGetObject.invokeExact(current, key) != null) {
+                    return new Resolution(BundleId.localeName(current.getLocale()), depth);
+                }
+                depth++;
+            }
+            return new Resolution("?", depth); // value computed by a custom getObject/handleGetObject override
+        } catch (final RuntimeException | Error e) {
+            throw e;
+        } catch (final Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static final class Resolution {
+
+        private final String locale;
+
+        private final int depth;
+
+        private Resolution(final String locale, final int depth) {
+            this.locale = locale;
+            this.depth = depth;
+        }
+    }
+}
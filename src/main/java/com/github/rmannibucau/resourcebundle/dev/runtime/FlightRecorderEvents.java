@@ -0,0 +1,218 @@
+package com.github.rmannibucau.resourcebundle.dev.runtime;
+
+import java.util.Locale;
+import java.util.ResourceBundle;
+import java.util.concurrent.ConcurrentMap;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.FlightRecorderListener;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Recording;
+import jdk.jfr.StackTrace;
+
+/**
+ * JDK Flight Recorder events of the instrumented {@code ResourceBundle}: {@code BundleLoad} (enabled by default) for the
+ * {@code getBundle} calls which loaded at least one bundle and {@code BundleLookup} (disabled by default, enable it in
+ * the recording settings) for the decorated lookups, its duration is the formatting time.
+ *
+ * The call sites are only linked to these hooks while a recording enables the event, a recording state change relinks
+ * them (a setting changed on a running recording is seen on the next state change), so without recording the cost is
+ * the same as without this class. Only referenced when {@code jdk.jfr} is available (java 11+, 8u262+).
+ */
+public final class FlightRecorderEvents {
+
+    // top of the stack of the loads being recorded (linked by BundleLoad.outer), a getBundle can be nested in a bundle
+    // load (bundle constructor)
+    private static final ThreadLocal<BundleLoad> CURRENT_LOAD = new ThreadLocal<>();
+
+    private static volatile boolean loads;
+
+    private static volatile boolean lookups;
+
+    private FlightRecorderEvents() {
+        // no-op
+    }
+
+    public static boolean isAvailable() {
+        try {
+            Class.forName("jdk.jfr.FlightRecorder", false, null);
+            return true;
+        } catch (final ClassNotFoundException e) {
+            return false;
+        }
+    }
+
+    static boolean isRecordingLoads() {
+        return loads;
+    }
+
+    static boolean isRecordingLookups() {
+        return lookups;
+    }
+
+    // the event types are registered with the first recording, registering them at startup initializes the recorder
+    public static synchronized void start() {
+        FlightRecorder.addListener(new FlightRecorderListener() {
+            @Override
+            public void recorderInitialized(final FlightRecorder recorder) {
+                refresh();
+            }
+
+            @Override
+            public void recordingStateChanged(final Recording recording) {
+                refresh();
+            }
+        });
+        refresh();
+    }
+
+    private static synchronized void refresh() {
+        if (!FlightRecorder.isInitialized()) {
+            return;
+        }
+        final boolean newLoads = EventType.getEventType(BundleLoad.class).isEnabled();
+        final boolean newLookups = EventType.getEventType(BundleLookup.class).isEnabled();
+        if (newLoads != loads || newLookups != lookups) {
+            loads = newLoads;
+            lookups = newLookups;
+            Linker.relink();
+        }
+    }
+
+    // folded in the control call site, the first instruction of getBundleImpl
+    static void onGetBundleStart(final String baseName, final ResourceBundle.Control control) {
+        final BundleLoad event = new BundleLoad();
+        event.baseName = baseName;
+        event.outer = CURRENT_LOAD.get();
+        CURRENT_LOAD.set(event);
+        event.begin();
+    }
+
+    // folded in the bundleLoaded call site (JDK cache miss)
+    static void onBundleLoaded(final ResourceBundle bundle, final BundleState state) {
+        final BundleLoad event = CURRENT_LOAD.get();
+        if (event != null) {
+            event.bundles++;
+        }
+    }
+
+    // folded in the getBundle call site, a getBundle served by the JDK cache is not recorded
+    static void onGetBundleEnd(final ResourceBundle bundle, final String baseName, final Locale requested,
+                               final Object loader) {
+        final BundleLoad event = pop(baseName);
+        if (event == null || event.bundles == 0) {
+            return;
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.locale = BundleId.localeName(requested);
+            event.loadedLocale = bundle == null ? null : BundleId.localeName(bundle.getLocale());
+            event.classLoader = ClassLoaderRegistry.describe(ClassLoaderRegistry.loaderOf(loader));
+            event.included = baseName != null && IncludeFilter.isIncluded(baseName);
+            event.commit();
+        }
+    }
+
+    // getBundleFailed call site, the exception handler of getBundleImpl (MissingResourceException for instance)
+    static void onGetBundleFailed(final String baseName) {
+        pop(baseName);
+    }
+
+    // the same base name instance is passed at the start and the end of a getBundleImpl call, an event started before
+    // a relinking (recording started during the call) is never popped by a call it didn't start
+    private static BundleLoad pop(final String baseName) {
+        final BundleLoad event = CURRENT_LOAD.get();
+        if (event == null || event.baseName != baseName) {
+            return null;
+        }
+        if (event.outer == null) {
+            CURRENT_LOAD.remove();
+        } else {
+            CURRENT_LOAD.set(event.outer);
+        }
+        return event;
+    }
+
+    // replaces Decorations.decorate in the getObject call site
+    static Object decorate(final ResourceBundle bundle, final BundleState state, final String key, final Object value) {
+        if (!state.isInstrumented(bundle)) {
+            return value;
+        }
+        final ConcurrentMap<String, Object> cache = state.getCache();
+        final boolean cached = cache != null && cache.get(key) != null;
+        final BundleLookup event = new BundleLookup();
+        event.begin();
+        final Object decorated = Decorations.decorate(bundle, state, key, value);
+        event.end();
+        if (event.shouldCommit()) {
+            event.baseName = bundle.getBaseBundleName();
+            event.locale = BundleId.localeName(bundle.getLocale());
+            event.key = key;
+            event.cached = cached;
+            event.commit();
+        }
+        return decorated;
+    }
+
+    static Object decorateScoped(final ResourceBundle bundle, final BundleState state, final String key, final Object value) {
+        return DecorationScope.isDecorated() ? decorate(bundle, state, key, value) : value;
+    }
+
+    @Name("com.github.rmannibucau.resourcebundle.dev.BundleLoad")
+    @Label("Bundle Load")
+    @Category("Resource Bundle")
+    @Description("ResourceBundle.getBundle call which loaded bundles (JDK cache miss)")
+    static final class BundleLoad extends Event {
+
+        @Label("Base Name")
+        String baseName;
+
+        @Label("Requested Locale")
+        String locale;
+
+        @Label("Loaded Locale")
+        String loadedLocale;
+
+        @Label("Class Loader")
+        String classLoader;
+
+        @Label("Included")
+        @Description("Is the base name included in the agent instrumentation")
+        boolean included;
+
+        @Label("Loaded Bundles")
+        @Description("Bundles put in the JDK cache by this call, missing candidate locales included")
+        int bundles;
+
+        // enclosing getBundle of the same thread, not recorded
+        transient BundleLoad outer;
+    }
+
+    @Name("com.github.rmannibucau.resourcebundle.dev.BundleLookup")
+    @Label("Bundle Lookup")
+    @Category("Resource Bundle")
+    @Description("Decorated ResourceBundle lookup, the duration is the formatting time")
+    @Enabled(false)
+    @StackTrace(false)
+    static final class BundleLookup extends Event {
+
+        @Label("Base Name")
+        String baseName;
+
+        @Label("Locale")
+        String locale;
+
+        @Label("Key")
+        String key;
+
+        @Label("Cached")
+        @Description("Was the decorated value read from the cache (cache=true)")
+        boolean cached;
+    }
+}
@@ -0,0 +1,57 @@
+package com.github.rmannibucau.resourcebundle.dev.runtime;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Evaluated when a bundle is loaded (its {@link BundleState} keeps the verdict) and by the {@code getBundle} hooks,
+ * the verdict is memoized per base name so a repeated evaluation is a single hash lookup.
+ */
+public final class IncludeFilter {
+
+    // base names are a small closed set in practice, bound it anyway to not leak on generated names
+    private static final int MAX_VERDICTS = 4096;
+
+    private static volatile IncludeFilter instance = new IncludeFilter(null, null);
+
+    // bundles cache their verdict and compare this version to know when to evaluate it again
+    private static volatile int version = 1;
+
+    private final BaseNameMatcher includes;
+
+    private final BaseNameMatcher excludes;
+
+    private final ConcurrentMap<String, Boolean> verdicts = new ConcurrentHashMap<>();
+
+    private IncludeFilter(final BaseNameMatcher includes, final BaseNameMatcher excludes) {
+        this.includes = includes;
+        this.excludes = excludes;
+    }
+
+    public static synchronized void configure(final Collection<String> includes, final Collection<String> excludes) {
+        instance = new IncludeFilter(BaseNameMatcher.compile(includes), BaseNameMatcher.compile(excludes));
+        version++;
+    }
+
+    public static int version() {
+        return version;
+    }
+
+    public static boolean isIncluded(final String baseName) {
+        return baseName == null || instance.test(baseName);
+    }
+
+    private boolean test(final String baseName) {
+        final Boolean verdict = verdicts.get(baseName);
+        if (verdict != null) {
+            return verdict;
+        }
+        final boolean included = (excludes == null || !excludes.matches(baseName))
+                && (includes == null || includes.matches(baseName));
+        if (verdicts.size() < MAX_VERDICTS) {
+            verdicts.putIfAbsent(baseName, included);
+        }
+        return included;
+    }
+}
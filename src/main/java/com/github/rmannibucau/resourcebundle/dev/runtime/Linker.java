@@ -0,0 +1,296 @@
+package com.github.rmannibucau.resourcebundle.dev.runtime;
+
+import static java.lang.invoke.MethodType.methodType;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.MutableCallSite;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.ResourceBundle;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Bootstrap of the {@code invokedynamic} instructions emitted in {@code ResourceBundle} (and {@code MessageFormat}).
+ * Each call site is linked to the {@link Decorations} method when the agent is active and to
+ * the identity of the undecorated value otherwise, so an inactive agent costs nothing once JIT compiled.
+ * When {@link UsageCounters}, {@link CallSiteSampler} or {@link Fallbacks} are enabled the lookup is recorded first
+ * (folded in the target), {@link Deduplication} is folded the same way in the bundle load call site,
+ * {@link ClassLoaderRegistry} in the getBundle one and the {@link FlightRecorderEvents} hooks while a recording enables
+ * their events.
+ * Toggling {@link DevState#setActive(boolean)} or {@link DevState#setScoped(boolean)} relinks all the call sites.
+ * The {@code getBundleImpl} control goes through {@link DevControl} only when one of its loaders is enabled,
+ * the undecorated value through the {@link MergedBundles} table only when it is started (the original parent chain
+ * walk otherwise) and {@code MessageFormat.format} through the {@link MessageFormats} cache only when it is started.
+ */
+public final class Linker {
+
+    // (ResourceBundle bundle, BundleState state, String key, Object value)Object
+    public static final String GET_OBJECT = "getObject";
+
+    // (ResourceBundle bundle, BundleState state, String key)Object, the undecorated value
+    public static final String RESOLVE = "resolve";
+
+    // (Object value, ResourceBundle bundle, String key)Object
+    public static final String HANDLE_GET_OBJECT = "handleGetObject";
+
+    // (ResourceBundle bundle, String baseName, Locale locale, Object classLoaderOrModule)V, bundle can be null
+    public static final String GET_BUNDLE = "getBundle";
+
+    // (String baseName)V, getBundleImpl threw
+    public static final String GET_BUNDLE_FAILED = "getBundleFailed";
+
+    // (ResourceBundle bundle, BundleState state)V
+    public static final String BUNDLE_LOADED = "bundleLoaded";
+
+    // (String baseName, ResourceBundle.Control control)ResourceBundle.Control
+    public static final String CONTROL = "control";
+
+    // (String pattern, Object[] arguments)String, the whole MessageFormat.format body
+    public static final String MESSAGE_FORMAT = "messageFormat";
+
+    private static final List<DevCallSite> CALL_SITES = new CopyOnWriteArrayList<>();
+
+    private Linker() {
+        // no-op
+    }
+
+    public static synchronized CallSite bootstrap(final MethodHandles.Lookup lookup, final String name,
+                                                  final MethodType type) {
+        Fallbacks.bind(lookup);
+        ClassLoaderRegistry.bind(lookup);
+        MergedBundles.bind(lookup);
+        final DevCallSite site = new DevCallSite(name, type);
+        site.link();
+        CALL_SITES.add(site);
+        return site;
+    }
+
+    static synchronized void relink() {
+        if (CALL_SITES.isEmpty()) {
+            return;
+        }
+        for (final DevCallSite site : CALL_SITES) {
+            site.link();
+        }
+        MutableCallSite.syncAll(CALL_SITES.toArray(new MutableCallSite[0]));
+    }
+
+    private static final class DevCallSite extends MutableCallSite {
+
+        private final String name;
+
+        private DevCallSite(final String name, final MethodType type) {
+            super(type);
+            this.name = name;
+        }
+
+        // flags are read for each site, linking only happens on configuration changes
+        private void link() {
+            final boolean active = DevState.isActive();
+            final boolean scoped = DevState.isScoped();
+            final boolean usage = UsageCounters.isEnabled();
+            final boolean fallbacks = Fallbacks.isEnabled();
+            MethodHandle target;
+            switch (name) {
+            case GET_OBJECT:
+                if (FlightRecorderEvents.isRecordingLookups()) {
+                    target = active ? (scoped ? Handles.RECORD_DECORATE_SCOPED : Handles.RECORD_DECORATE) : passThrough();
+                } else {
+                    target = active ? (scoped ? Handles.DECORATE_SCOPED : Handles.DECORATE) : passThrough();
+                }
+                if (usage) {
+                    target = MethodHandles.foldArguments(target, Handles.COUNT);
+                }
+                if (CallSiteSampler.isEnabled()) {
+                    target = MethodHandles.foldArguments(target, Handles.SAMPLE_CALLER);
+                }
+                if (MessageFormats.isEnabled()) { // undecorated values are formatted from the cache too
+                    target = MethodHandles.foldArguments(target, Handles.RECORD_PATTERN);
+                }
+                if (fallbacks) {
+                    target = MethodHandles.foldArguments(target, Handles.RECORD_FALLBACK);
+                }
+                break;
+            case RESOLVE: // the original parent chain walk, after a merged table probe when enabled
+                target = MethodHandles.dropArguments(MergedBundles.chain(), 1, BundleState.class);
+                if (MergedBundles.isEnabled()) {
+                    target = MethodHandles.foldArguments(MethodHandles.guardWithTest(Handles.IS_NULL,
+                            MethodHandles.dropArguments(target, 0, Object.class),
+                            MethodHandles.dropArguments(MethodHandles.identity(Object.class), 1, target.type().parameterList())),
+                            Handles.MERGED_LOOKUP);
+                }
+                break;
+            case HANDLE_GET_OBJECT: // attach mode, no usage tracking
+                target = active ? (scoped ? Handles.DECORATE_OWN_VALUE_SCOPED : Handles.DECORATE_OWN_VALUE) : passThrough();
+                break;
+            case GET_BUNDLE: // only fallbacks need the requested locale, getBundle is otherwise untouched
+                target = fallbacks ? Handles.ON_GET_BUNDLE : passThrough();
+                if (ClassLoaderRegistry.isEnabled()) {
+                    target = MethodHandles.foldArguments(target, Handles.REGISTER_LOADER);
+                }
+                if (MergedBundles.isEnabled()) {
+                    target = MethodHandles.foldArguments(target, Handles.MERGE);
+                }
+                if (FlightRecorderEvents.isRecordingLoads()) {
+                    target = MethodHandles.foldArguments(target, Handles.RECORD_GET_BUNDLE_END);
+                }
+                break;
+            case GET_BUNDLE_FAILED:
+                target = FlightRecorderEvents.isRecordingLoads() ? Handles.RECORD_GET_BUNDLE_FAILED : passThrough();
+                break;
+            case BUNDLE_LOADED:
+                target = active || usage || fallbacks ? Handles.ON_LOAD : passThrough();
+                if (Deduplication.isEnabled()) {
+                    target = MethodHandles.foldArguments(target, Handles.DEDUPLICATE);
+                }
+                if (FlightRecorderEvents.isRecordingLoads()) {
+                    target = MethodHandles.foldArguments(target, Handles.RECORD_BUNDLE_LOADED);
+                }
+                break;
+            case CONTROL:
+                target = DevControl.isEnabled() ? Handles.CONTROL : passThrough();
+                if (FlightRecorderEvents.isRecordingLoads()) { // first instruction of getBundleImpl
+                    target = MethodHandles.foldArguments(target, Handles.RECORD_GET_BUNDLE_START);
+                }
+                break;
+            case MESSAGE_FORMAT: // only instrumented with messageFormat=true
+                target = MessageFormats.isEnabled() ? Handles.FORMAT_MESSAGE : Handles.FORMAT_MESSAGE_UNCACHED;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown call site: " + name);
+            }
+            setTarget(target.asType(type()));
+        }
+
+        private MethodHandle passThrough() {
+            final MethodType type = type();
+            if (type.returnType() == void.class) {
+                return MethodHandles.dropArguments(
+                        MethodHandles.constant(Object.class, null), 0, type.parameterList())
+                        .asType(type);
+            }
+            // the undecorated value is the first parameter for handleGetObject and the last one otherwise
+            final int valueIndex = HANDLE_GET_OBJECT.equals(name) ? 0 : type.parameterCount() - 1;
+            final MethodHandle identity = MethodHandles.identity(type.parameterType(valueIndex));
+            return MethodHandles.dropArguments(
+                    MethodHandles.dropArguments(identity, 1, type.parameterList().subList(valueIndex + 1, type.parameterCount())),
+                    0, type.parameterList().subList(0, valueIndex));
+        }
+    }
+
+    // not in Linker itself: initializing it must not load ResourceBundle before the transformer is registered
+    private static final class Handles {
+
+        private static final MethodHandle DECORATE;
+
+        private static final MethodHandle DECORATE_SCOPED;
+
+        private static final MethodHandle DECORATE_OWN_VALUE;
+
+        private static final MethodHandle DECORATE_OWN_VALUE_SCOPED;
+
+        private static final MethodHandle ON_GET_BUNDLE;
+
+        private static final MethodHandle ON_LOAD;
+
+        private static final MethodHandle DEDUPLICATE;
+
+        private static final MethodHandle COUNT;
+
+        private static final MethodHandle SAMPLE_CALLER;
+
+        private static final MethodHandle RECORD_PATTERN;
+
+        private static final MethodHandle RECORD_FALLBACK;
+
+        private static final MethodHandle CONTROL;
+
+        private static final MethodHandle MERGE;
+
+        private static final MethodHandle MERGED_LOOKUP;
+
+        private static final MethodHandle IS_NULL;
+
+        private static final MethodHandle REGISTER_LOADER;
+
+        private static final MethodHandle RECORD_DECORATE;
+
+        private static final MethodHandle RECORD_DECORATE_SCOPED;
+
+        private static final MethodHandle RECORD_GET_BUNDLE_START;
+
+        private static final MethodHandle RECORD_BUNDLE_LOADED;
+
+        private static final MethodHandle RECORD_GET_BUNDLE_END;
+
+        private static final MethodHandle RECORD_GET_BUNDLE_FAILED;
+
+        private static final MethodHandle FORMAT_MESSAGE;
+
+        private static final MethodHandle FORMAT_MESSAGE_UNCACHED;
+
+        static {
+            final MethodHandles.Lookup lookup = MethodHandles.lookup();
+            try {
+                DECORATE = lookup.findStatic(Decorations.class, "decorate", methodType(
+                        Object.class, ResourceBundle.class, BundleState.class, String.class, Object.class));
+                DECORATE_SCOPED = lookup.findStatic(Decorations.class, "decorateScoped", methodType(
+                        Object.class, ResourceBundle.class, BundleState.class, String.class, Object.class));
+                DECORATE_OWN_VALUE = lookup.findStatic(Decorations.class, "decorateOwnValue", methodType(
+                        Object.class, Object.class, ResourceBundle.class, String.class));
+                DECORATE_OWN_VALUE_SCOPED = lookup.findStatic(Decorations.class, "decorateOwnValueScoped", methodType(
+                        Object.class, Object.class, ResourceBundle.class, String.class));
+                ON_GET_BUNDLE = MethodHandles.dropArguments(lookup.findStatic(Fallbacks.class, "onGetBundle", methodType(
+                        void.class, ResourceBundle.class, String.class, Locale.class)), 3, Object.class);
+                ON_LOAD = lookup.findStatic(Decorations.class, "onLoad", methodType(
+                        void.class, ResourceBundle.class, BundleState.class));
+                DEDUPLICATE = lookup.findStatic(Deduplication.class, "onLoad", methodType(
+                        void.class, ResourceBundle.class, BundleState.class));
+                COUNT = lookup.findStatic(UsageCounters.class, "count", methodType(
+                        void.class, ResourceBundle.class, BundleState.class, String.class, Object.class));
+                SAMPLE_CALLER = lookup.findStatic(CallSiteSampler.class, "sample", methodType(
+                        void.class, ResourceBundle.class, BundleState.class, String.class, Object.class));
+                RECORD_PATTERN = lookup.findStatic(MessageFormats.class, "onLookup", methodType(
+                        void.class, ResourceBundle.class, BundleState.class, String.class, Object.class));
+                RECORD_FALLBACK = lookup.findStatic(Fallbacks.class, "record", methodType(
+                        void.class, ResourceBundle.class, BundleState.class, String.class, Object.class));
+                CONTROL = lookup.findStatic(DevControl.class, "wrap", methodType(
+                        ResourceBundle.Control.class, String.class, ResourceBundle.Control.class));
+                REGISTER_LOADER = lookup.findStatic(ClassLoaderRegistry.class, "onGetBundle", methodType(
+                        void.class, ResourceBundle.class, String.class, Locale.class, Object.class));
+                MERGE = lookup.findStatic(MergedBundles.class, "onGetBundle", methodType(
+                        void.class, ResourceBundle.class, String.class, Locale.class, Object.class));
+                MERGED_LOOKUP = lookup.findStatic(MergedBundles.class, "lookup", methodType(
+                        Object.class, ResourceBundle.class, BundleState.class, String.class));
+                IS_NULL = lookup.findStatic(Objects.class, "isNull", methodType(boolean.class, Object.class));
+                // FlightRecorderEvents signatures don't reference jdk.jfr, resolving them doesn't need it
+                RECORD_DECORATE = lookup.findStatic(FlightRecorderEvents.class, "decorate", methodType(
+                        Object.class, ResourceBundle.class, BundleState.class, String.class, Object.class));
+                RECORD_DECORATE_SCOPED = lookup.findStatic(FlightRecorderEvents.class, "decorateScoped", methodType(
+                        Object.class, ResourceBundle.class, BundleState.class, String.class, Object.class));
+                RECORD_GET_BUNDLE_START = lookup.findStatic(FlightRecorderEvents.class, "onGetBundleStart", methodType(
+                        void.class, String.class, ResourceBundle.Control.class));
+                RECORD_BUNDLE_LOADED = lookup.findStatic(FlightRecorderEvents.class, "onBundleLoaded", methodType(
+                        void.class, ResourceBundle.class, BundleState.class));
+                RECORD_GET_BUNDLE_END = lookup.findStatic(FlightRecorderEvents.class, "onGetBundleEnd", methodType(
+                        void.class, ResourceBundle.class, String.class, Locale.class, Object.class));
+                RECORD_GET_BUNDLE_FAILED = lookup.findStatic(FlightRecorderEvents.class, "onGetBundleFailed", methodType(
+                        void.class, String.class));
+                FORMAT_MESSAGE = lookup.findStatic(MessageFormats.class, "format", methodType(
+                        String.class, String.class, Object[].class));
+                FORMAT_MESSAGE_UNCACHED = lookup.findStatic(MessageFormats.class, "formatUncached", methodType(
+                        String.class, String.class, Object[].class));
+            } catch (final NoSuchMethodException | IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        private Handles() {
+            // no-op
+        }
+    }
+}
@@ -0,0 +1,404 @@
+package com.github.rmannibucau.resourcebundle.dev.runtime;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * {@code .properties} bundle keeping the file bytes and an index of the entry offsets.
+ * Keys are hashed when the bundle is created and values are decoded (escapes and charset) on their first lookup,
+ * so a bundle only costs its int index until it is used and then only for the keys actually read.
+ * The syntax is the {@link java.util.Properties#load(java.io.Reader)} one, the charset the {@code PropertyResourceBundle}
+ * one (ISO-8859-1 on java 8, UTF-8 falling back on ISO-8859-1 on java 9+).
+ *
+ * All syntax characters are ASCII and never part of an UTF-8 multi bytes sequence so the index works on bytes
+ * for both charsets.
+ */
+public final class MappedPropertiesBundle extends java.util.ResourceBundle {
+
+    private static final Charset DEFAULT_CHARSET = defaultCharset();
+
+    private final ByteBuffer content;
+
+    private final Charset charset;
+
+    private int size;
+
+    private int[] hashes;
+
+    private int[] keyStarts;
+
+    // negative (~end) when the key needs to be decoded, otherwise the bytes are the key chars
+    private int[] keyEnds;
+
+    private int[] valueStarts;
+
+    private int[] valueEnds;
+
+    // open addressing on the key hash, entry index + 1
+    private int[] table;
+
+    private final Object[] values;
+
+    private volatile Set<String> keys;
+
+    MappedPropertiesBundle(final ByteBuffer content) {
+        this.content = content;
+        this.charset = DEFAULT_CHARSET != null ? DEFAULT_CHARSET : (isUtf8(content) ? UTF_8 : ISO_8859_1);
+        final int estimate = Math.max(16, content.limit() / 32);
+        hashes = new int[estimate];
+        keyStarts = new int[estimate];
+        keyEnds = new int[estimate];
+        valueStarts = new int[estimate];
+        valueEnds = new int[estimate];
+        table = new int[Integer.highestOneBit(estimate) << 2];
+        index();
+        values = new Object[size];
+    }
+
+    @Override
+    protected Object handleGetObject(final String key) {
+        if (key == null) {
+            throw new NullPointerException();
+        }
+        final int entry = find(key, key.hashCode());
+        if (entry < 0) {
+            return null;
+        }
+        Object value = values[entry];
+        if (value == null) { // racy but strings are immutable, worse case is to decode twice
+            value = Deduplication.onDecode(this, decode(valueStarts[entry], valueEnds[entry]));
+            values[entry] = value;
+        }
+        return value;
+    }
+
+    @Override
+    public Enumeration<String> getKeys() {
+        final Set<String> all = new LinkedHashSet<>(handleKeySet());
+        if (parent != null) {
+            all.addAll(parent.keySet());
+        }
+        return Collections.enumeration(all);
+    }
+
+    // entries of this bundle only, keys are in the content and not retained as strings
+    int size() {
+        return size;
+    }
+
+    // not the default implementation which looks up (so decodes) every value
+    @Override
+    protected Set<String> handleKeySet() {
+        Set<String> result = keys;
+        if (result == null) {
+            result = new HashSet<>(size * 4 / 3 + 1);
+            for (int i = 0; i < size; i++) {
+                result.add(key(i));
+            }
+            result = Collections.unmodifiableSet(result);
+            keys = result;
+        }
+        return result;
+    }
+
+    private int find(final String key, final int hash) {
+        final int mask = table.length - 1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            final int entry = table[slot] - 1;
+            if (entry < 0) {
+                return -1;
+            }
+            if (hashes[entry] == hash && keyEquals(entry, key)) {
+                return entry;
+            }
+        }
+    }
+
+    private boolean keyEquals(final int entry, final String key) {
+        final int end = keyEnds[entry];
+        if (end < 0) {
+            return key.equals(key(entry));
+        }
+        final int start = keyStarts[entry];
+        if (end - start != key.length()) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            if (content.get(i) != key.charAt(i - start)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String key(final int entry) {
+        final int end = keyEnds[entry];
+        return end < 0 ? decode(keyStarts[entry], ~end) : decode(keyStarts[entry], end);
+    }
+
+    private void index() {
+        final StringBuilder key = new StringBuilder();
+        final int limit = content.limit();
+        int pos = 0;
+        while (pos < limit) {
+            final byte b = content.get(pos);
+            if (b == ' ' || b == '\t' || b == '\f' || b == '\r' || b == '\n') {
+                pos++;
+                continue;
+            }
+            if (b == '#' || b == '!') { // a comment is never continued
+                while (pos < limit && content.get(pos) != '\n' && content.get(pos) != '\r') {
+                    pos++;
+                }
+                continue;
+            }
+
+            final int keyStart = pos;
+            boolean simple = true;
+            while (pos < limit) {
+                final byte c = content.get(pos);
+                if (c == '\\') {
+                    simple = false;
+                    pos = skipEscape(pos, limit);
+                } else if (c == '=' || c == ':' || c == ' ' || c == '\t' || c == '\f' || c == '\r' || c == '\n') {
+                    break;
+                } else {
+                    simple &= c >= 0;
+                    pos++;
+                }
+            }
+            final int keyEnd = pos;
+
+            pos = skipWhitespaces(pos, limit);
+            if (pos < limit && (content.get(pos) == '=' || content.get(pos) == ':')) {
+                pos = skipWhitespaces(pos + 1, limit);
+            }
+            final int valueStart = pos;
+            while (pos < limit) {
+                final byte c = content.get(pos);
+                if (c == '\\') {
+                    pos = skipEscape(pos, limit);
+                } else if (c == '\r' || c == '\n') {
+                    break;
+                } else {
+                    pos++;
+                }
+            }
+
+            key.setLength(0);
+            decode(keyStart, keyEnd, key);
+            add(hash(key), keyStart, simple ? keyEnd : ~keyEnd, valueStart, pos, key);
+        }
+    }
+
+    private void add(final int hash, final int keyStart, final int keyEnd, final int valueStart, final int valueEnd,
+                     final CharSequence key) {
+        final int mask = table.length - 1;
+        int slot = hash & mask;
+        for (; table[slot] != 0; slot = (slot + 1) & mask) {
+            final int existing = table[slot] - 1;
+            if (hashes[existing] == hash && key(existing).contentEquals(key)) { // last one wins as in Properties
+                keyStarts[existing] = keyStart;
+                keyEnds[existing] = keyEnd;
+                valueStarts[existing] = valueStart;
+                valueEnds[existing] = valueEnd;
+                return;
+            }
+        }
+        if (size == hashes.length) {
+            final int capacity = size * 2;
+            hashes = Arrays.copyOf(hashes, capacity);
+            keyStarts = Arrays.copyOf(keyStarts, capacity);
+            keyEnds = Arrays.copyOf(keyEnds, capacity);
+            valueStarts = Arrays.copyOf(valueStarts, capacity);
+            valueEnds = Arrays.copyOf(valueEnds, capacity);
+        }
+        hashes[size] = hash;
+        keyStarts[size] = keyStart;
+        keyEnds[size] = keyEnd;
+        valueStarts[size] = valueStart;
+        valueEnds[size] = valueEnd;
+        table[slot] = ++size;
+        if (size * 2 > table.length) {
+            rehash(table.length * 2);
+        }
+    }
+
+    private void rehash(final int capacity) {
+        table = new int[capacity];
+        final int mask = capacity - 1;
+        for (int entry = 0; entry < size; entry++) {
+            int slot = hashes[entry] & mask;
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = entry + 1;
+        }
+    }
+
+    // the escaped char or a line continuation (the new line and the leading whitespaces of the next line)
+    private int skipEscape(final int backslash, final int limit) {
+        int pos = backslash + 1;
+        if (pos >= limit) {
+            return pos;
+        }
+        final byte c = content.get(pos++);
+        if (c == '\r' || c == '\n') {
+            if (c == '\r' && pos < limit && content.get(pos) == '\n') {
+                pos++;
+            }
+            while (pos < limit && (content.get(pos) == ' ' || content.get(pos) == '\t' || content.get(pos) == '\f')) {
+                pos++;
+            }
+        }
+        return pos;
+    }
+
+    private int skipWhitespaces(final int start, final int limit) {
+        int pos = start;
+        while (pos < limit) {
+            final byte c = content.get(pos);
+            if (c == ' ' || c == '\t' || c == '\f') {
+                pos++;
+            } else if (c == '\\' && pos + 1 < limit && (content.get(pos + 1) == '\r' || content.get(pos + 1) == '\n')) {
+                pos = skipEscape(pos, limit);
+            } else {
+                break;
+            }
+        }
+        return pos;
+    }
+
+    private String decode(final int start, final int end) {
+        final StringBuilder builder = new StringBuilder(end - start);
+        decode(start, end, builder);
+        return builder.toString();
+    }
+
+    private void decode(final int start, final int end, final StringBuilder out) {
+        int pos = start;
+        while (pos < end) {
+            final byte b = content.get(pos);
+            if (b == '\\') {
+                pos++;
+                if (pos >= end) {
+                    break;
+                }
+                final byte c = content.get(pos);
+                if (c == '\r' || c == '\n') {
+                    pos = skipEscape(pos - 1, end);
+                    continue;
+                }
+                if (c < 0) { // escaped non ASCII char is the char itself
+                    continue;
+                }
+                pos++;
+                switch (c) {
+                case 't':
+                    out.append('\t');
+                    break;
+                case 'r':
+                    out.append('\r');
+                    break;
+                case 'n':
+                    out.append('\n');
+                    break;
+                case 'f':
+                    out.append('\f');
+                    break;
+                case 'u':
+                    if (pos + 4 > end) {
+                        throw new IllegalArgumentException("Malformed \\uxxxx encoding.");
+                    }
+                    int value = 0;
+                    for (int i = 0; i < 4; i++) {
+                        final int digit = Character.digit(content.get(pos++), 16);
+                        if (digit < 0) {
+                            throw new IllegalArgumentException("Malformed \\uxxxx encoding.");
+                        }
+                        value = (value << 4) | digit;
+                    }
+                    out.append((char) value);
+                    break;
+                default:
+                    out.append((char) c);
+                }
+            } else if (b >= 0) {
+                out.append((char) b);
+                pos++;
+            } else if (charset == ISO_8859_1) {
+                out.append((char) (b & 0xFF));
+                pos++;
+            } else {
+                int runEnd = pos;
+                while (runEnd < end && content.get(runEnd) < 0) {
+                    runEnd++;
+                }
+                final byte[] run = new byte[runEnd - pos];
+                for (int i = 0; i < run.length; i++) {
+                    run[i] = content.get(pos + i);
+                }
+                out.append(new String(run, charset));
+                pos = runEnd;
+            }
+        }
+    }
+
+    private static int hash(final CharSequence value) {
+        int hash = 0;
+        for (int i = 0; i < value.length(); i++) {
+            hash = 31 * hash + value.charAt(i);
+        }
+        return hash;
+    }
+
+    private static boolean isUtf8(final ByteBuffer content) {
+        final int limit = content.limit();
+        int pos = 0;
+        while (pos < limit) {
+            final int b = content.get(pos++) & 0xFF;
+            final int continuations;
+            if (b < 0x80) {
+                continue;
+            } else if (b >= 0xC2 && b <= 0xDF) {
+                continuations = 1;
+            } else if (b >= 0xE0 && b <= 0xEF) {
+                continuations = 2;
+            } else if (b >= 0xF0 && b <= 0xF4) {
+                continuations = 3;
+            } else {
+                return false;
+            }
+            for (int i = 0; i < continuations; i++) {
+                if (pos >= limit || (content.get(pos++) & 0xC0) != 0x80) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    // null when it depends on the content (java 9+ default)
+    private static Charset defaultCharset() {
+        if (System.getProperty("java.specification.version", "").startsWith("1.")) {
+            return ISO_8859_1;
+        }
+        final String encoding = System.getProperty("java.util.PropertyResourceBundle.encoding");
+        if ("ISO-8859-1".equalsIgnoreCase(encoding)) {
+            return ISO_8859_1;
+        }
+        if ("UTF-8".equalsIgnoreCase(encoding)) {
+            return UTF_8;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,189 @@
+package com.github.rmannibucau.resourcebundle.dev.runtime;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ListResourceBundle;
+import java.util.Locale;
+import java.util.PropertyResourceBundle;
+import java.util.ResourceBundle;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Flattened parent chains: the bundle returned by {@code getBundle} gets a read only open addressing table of the keys
+ * of its whole chain (interned) with the value the chain resolves for each of them, a lookup is then a single probe
+ * instead of a {@code handleGetObject} per parent. Keys missing from the table still go through the chain, so a missing
+ * key throws the same {@code MissingResourceException}.
+ *
+ * Only included bundles whose chain is made of {@code PropertyResourceBundle}, {@code ListResourceBundle} or binary
+ * bundles are flattened, other subclasses can compute their values and mapped bundles decode them lazily.
+ * The table is tagged with the JDK cache generation: after a {@code clearCache} (or a reconfiguration) it is ignored
+ * until the next {@code getBundle} returning the bundle builds it again.
+ */
+public final class MergedBundles {
+
+    private static final LongAdder TABLES = new LongAdder();
+
+    private static final LongAdder ENTRIES = new LongAdder();
+
+    private static volatile boolean enabled;
+
+    // ResourceBundle members, only accessible with the lookup of the instrumented class (see Linker)
+    private static volatile MethodHandle chain;
+
+    private static volatile MethodHandle state;
+
+    private static volatile MethodHandle parent;
+
+    private static volatile MethodHandle handleGetObject;
+
+    private MergedBundles() {
+        // no-op
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static long getTables() {
+        return TABLES.sum();
+    }
+
+    public static long getEntries() {
+        return ENTRIES.sum();
+    }
+
+    public static synchronized void start() {
+        enabled = true;
+        Linker.relink();
+    }
+
+    static void bind(final MethodHandles.Lookup lookup) {
+        if (chain != null || lookup.lookupClass() != ResourceBundle.class) {
+            return;
+        }
+        try {
+            handleGetObject = lookup.findVirtual(ResourceBundle.class, "handleGetObject",
+                    MethodType.methodType(Object.class, String.class));
+            parent = lookup.findGetter(ResourceBundle.class, "parent", ResourceBundle.class);
+            state = lookup.findGetter(ResourceBundle.class, "__agent__state", BundleState.class);
+            chain = lookup.findVirtual(ResourceBundle.class, "__agent__getObject",
+                    MethodType.methodType(Object.class, String.class));
+        } catch (final NoSuchMethodException | NoSuchFieldException | IllegalAccessException e) { // retransformation
+            chain = null;
+        }
+    }
+
+    // (ResourceBundle bundle, String key)Object, the original getObject
+    static MethodHandle chain() {
+        return chain;
+    }
+
+    // probed by the resolve call site before the chain
+    static Object lookup(final ResourceBundle bundle, final BundleState state, final String key) {
+        final Table table = state.getMerged();
+        return table == null || key == null || table.generation != DevState.cacheGeneration() ? null : table.get(key);
+    }
+
+    // folded in the getBundle call site, the chain is complete once getBundleImpl returns
+    static void onGetBundle(final ResourceBundle bundle, final String baseName, final Locale requested, final Object loader) {
+        if (bundle == null || state == null) {
+            return;
+        }
+        try {
+            final BundleState bundleState = (BundleState) state.invokeExact(bundle);
+            final int generation = DevState.cacheGeneration();
+            final Table current = bundleState.getMerged();
+            if ((current != null && current.generation == generation) || !bundleState.isInstrumented(bundle)) {
+                return;
+            }
+            bundleState.setMerged(merge(bundle, generation, parent, handleGetObject));
+        } catch (final RuntimeException | Error e) {
+            throw e;
+        } catch (final Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @param parentOf {@code (ResourceBundle)ResourceBundle}, the parent field.
+     * @param ownValue {@code (ResourceBundle, String)Object}, {@code handleGetObject}.
+     */
+    static Table merge(final ResourceBundle leaf, final int generation, final MethodHandle parentOf,
+                       final MethodHandle ownValue) throws Throwable {
+        for (ResourceBundle current = leaf; current != null; current = (ResourceBundle) parentOf.invokeExact(current)) {
+            if (!(current instanceof PropertyResourceBundle || current instanceof ListResourceBundle
+                    || current instanceof BinaryBundle)) {
+                return new Table(generation, new String[0], new Object[0], 0);
+            }
+        }
+        final Set<String> names = leaf.keySet(); // the chain keys
+        final String[] keys = new String[names.size()];
+        final Object[] values = new Object[keys.length];
+        int size = 0;
+        for (final String key : names) {
+            Object value = null;
+            for (ResourceBundle current = leaf; value == null && current != null;
+                    current = (ResourceBundle) parentOf.invokeExact(current)) {
+                value = ownValue.invokeExact(current, key);
+            }
+            if (value != null) {
+                keys[size] = key.intern();
+                values[size++] = value;
+            }
+        }
+        TABLES.increment();
+        ENTRIES.add(size);
+        return new Table(generation, keys, values, size);
+    }
+
+    /**
+     * Linear probing in a single array alternating keys and values, at most half full so a probe usually ends on the
+     * first slot. Keys are interned: a literal key matches by reference, other keys with {@code equals}.
+     * Final fields and entries written in the constructor, the table is safely published through a plain field.
+     */
+    static final class Table {
+
+        private final int generation;
+
+        private final int mask;
+
+        private final Object[] slots;
+
+        private Table(final int generation, final String[] keys, final Object[] values, final int size) {
+            this.generation = generation;
+            final int capacity = Integer.highestOneBit(Math.max(1, size) * 2 - 1) << 1;
+            this.mask = capacity - 1;
+            this.slots = new Object[capacity * 2];
+            for (int i = 0; i < size; i++) {
+                int index = index(keys[i]);
+                while (slots[index << 1] != null) {
+                    index = (index + 1) & mask;
+                }
+                slots[index << 1] = keys[i];
+                slots[(index << 1) + 1] = values[i];
+            }
+        }
+
+        private Object get(final String key) {
+            for (int index = index(key); ; index = (index + 1) & mask) {
+                final Object candidate = slots[index << 1];
+                if (candidate == key) {
+                    return slots[(index << 1) + 1];
+                }
+                if (candidate == null) {
+                    return null;
+                }
+                if (key.equals(candidate)) {
+                    return slots[(index << 1) + 1];
+                }
+            }
+        }
+
+        private int index(final String key) {
+            final int hash = key.hashCode();
+            return (hash ^ (hash >>> 16)) & mask;
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.github.rmannibucau.resourcebundle.dev.runtime;
+
+import java.text.MessageFormat;
+import java.util.Locale;
+import java.util.ResourceBundle;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Target of the instrumented {@code MessageFormat.format(String, Object...)}: when the pattern is a decorated bundle value
+ * the undecorated value is parsed once per locale, each call formats a clone of the parsed prototype
+ * ({@code MessageFormat} is not thread safe) and the decoration is applied to the result, after the substitution,
+ * so a decoration never changes how the pattern is parsed. Other patterns keep the JDK behavior.
+ *
+ * Values are recorded when they are decorated if the result contains a {@code MessageFormat} element or quote, a decoration
+ * which is not a prefix and a suffix of the value (pseudo-localization, pattern using {@code $value} twice) is parsed
+ * decorated. The values of the included bundles are also recorded as they are looked up, decorated or not (rule disabling
+ * the decoration, thread out of a scope, decoration disabled), so they are parsed once as well. Both tables are bounded and
+ * cleared with the decorated values (see {@link DevState#invalidateCaches()}) and on a reload, the values looked up again
+ * are then recorded again.
+ */
+public final class MessageFormats {
+
+    private static final int MAX_SOURCES = 4096;
+
+    private static final int MAX_FORMATS_PER_LOCALE = 1024;
+
+    // value passed to the formatter to find the decoration around the value
+    private static final String MARKER = "\u0000";
+
+    // decorated value -> undecorated pattern and decoration
+    private static final ConcurrentMap<String, Source> SOURCES = new ConcurrentHashMap<>();
+
+    private static final ConcurrentMap<Locale, ConcurrentMap<String, MessageFormat>> FORMATS = new ConcurrentHashMap<>();
+
+    private static final LongAdder HITS = new LongAdder();
+
+    private static final LongAdder PARSES = new LongAdder();
+
+    private static volatile boolean enabled;
+
+    private MessageFormats() {
+        // no-op
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static synchronized void start() {
+        enabled = true;
+        Linker.relink();
+    }
+
+    public static long getHits() {
+        return HITS.sum();
+    }
+
+    public static long getParses() {
+        return PARSES.sum();
+    }
+
+    // decorations changed or bundles reloaded, the recorded values are stale
+    static void clear() {
+        SOURCES.clear();
+        FORMATS.clear();
+    }
+
+    // folded in the getObject call site, the value before any decoration
+    static void onLookup(final ResourceBundle bundle, final BundleState state, final String key, final Object value) {
+        if (!(value instanceof String)) {
+            return;
+        }
+        final String pattern = (String) value;
+        if ((pattern.indexOf('{') < 0 && pattern.indexOf('\'') < 0) || SOURCES.containsKey(pattern)
+                || SOURCES.size() >= MAX_SOURCES || !state.isInstrumented(bundle)) {
+            return;
+        }
+        SOURCES.putIfAbsent(pattern, new Source(pattern, "", ""));
+    }
+
+    // called by Decorations for each formatted string value
+    static void onDecorated(final String value, final String decorated, final ResourceBundle bundle,
+                            final ValueFormatter formatter) {
+        if ((decorated.indexOf('{') < 0 && decorated.indexOf('\'') < 0) || SOURCES.containsKey(decorated)
+                || SOURCES.size() >= MAX_SOURCES) {
+            return;
+        }
+        final String marked = formatter.format(MARKER, bundle);
+        final int index = marked.indexOf(MARKER);
+        final String prefix = index < 0 ? null : marked.substring(0, index);
+        final String suffix = index < 0 ? null : marked.substring(index + MARKER.length());
+        if (prefix != null && decorated.length() == prefix.length() + value.length() + suffix.length()
+                && decorated.startsWith(prefix) && decorated.endsWith(suffix)) {
+            SOURCES.putIfAbsent(decorated, new Source(value, prefix, suffix));
+        } else {
+            SOURCES.putIfAbsent(decorated, new Source(decorated, "", ""));
+        }
+    }
+
+    // linked when enabled
+    static String format(final String pattern, final Object[] arguments) {
+        final Source source = pattern == null ? null : SOURCES.get(pattern);
+        if (source == null) {
+            return formatUncached(pattern, arguments);
+        }
+        final Locale locale = Locale.getDefault(Locale.Category.FORMAT);
+        final MessageFormat prototype = prototype(locale, source.pattern);
+        final String formatted = ((MessageFormat) prototype.clone()).format(arguments);
+        if (source.prefix.isEmpty() && source.suffix.isEmpty()) {
+            return formatted;
+        }
+        return source.prefix + formatted + source.suffix;
+    }
+
+    // the original MessageFormat.format body
+    static String formatUncached(final String pattern, final Object[] arguments) {
+        return new MessageFormat(pattern).format(arguments);
+    }
+
+    private static MessageFormat prototype(final Locale locale, final String pattern) {
+        ConcurrentMap<String, MessageFormat> formats = FORMATS.get(locale);
+        if (formats == null) {
+            formats = new ConcurrentHashMap<>();
+            final ConcurrentMap<String, MessageFormat> existing = FORMATS.putIfAbsent(locale, formats);
+            if (existing != null) {
+                formats = existing;
+            }
+        }
+        final MessageFormat cached = formats.get(pattern);
+        if (cached != null) {
+            HITS.increment();
+            return cached;
+        }
+        PARSES.increment();
+        final MessageFormat parsed = new MessageFormat(pattern, locale);
+        if (formats.size() < MAX_FORMATS_PER_LOCALE) {
+            formats.putIfAbsent(pattern, parsed);
+        }
+        return parsed;
+    }
+
+    private static final class Source {
+
+        private final String pattern;
+
+        private final String prefix;
+
+        private final String suffix;
+
+        private Source(final String pattern, final String prefix, final String suffix) {
+            this.pattern = pattern;
+            this.prefix = prefix;
+            this.suffix = suffix;
+        }
+    }
+}
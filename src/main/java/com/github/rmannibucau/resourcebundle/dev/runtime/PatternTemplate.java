@@ -0,0 +1,132 @@
+package com.github.rmannibucau.resourcebundle.dev.runtime;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.ResourceBundle;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The user pattern split once into literal and variable segments so nothing is scanned at lookup time,
+ * {@link #format(String, ResourceBundle)} appends the segments to a builder sized from the literals.
+ */
+public final class PatternTemplate implements ValueFormatter {
+
+    private static final ConcurrentMap<Locale, String> LOCALE_NAMES = new ConcurrentHashMap<>();
+
+    private static final ConcurrentMap<Locale, String> LANG_NAMES = new ConcurrentHashMap<>();
+
+    private final Segment[] segments;
+
+    private final int capacity;
+
+    private PatternTemplate(final List<Segment> segments) {
+        this.segments = segments.toArray(new Segment[0]);
+        this.capacity = segments.stream()
+                .mapToInt(it -> it.variable == null ? it.literal.length() : it.variable == Variable.VALUE ? 0 : 16)
+                .sum();
+    }
+
+    @Override
+    public String format(final String value, final ResourceBundle bundle) {
+        final StringBuilder builder = new StringBuilder(capacity + value.length());
+        for (final Segment segment : segments) {
+            if (segment.variable == null) {
+                builder.append(segment.literal);
+                continue;
+            }
+            switch (segment.variable) {
+            case VALUE:
+                builder.append(value);
+                break;
+            case LOCALE:
+                builder.append(localeName(bundle.getLocale()));
+                break;
+            case LANG:
+                builder.append(langName(bundle.getLocale()));
+                break;
+            case BASE:
+                builder.append(bundle.getBaseBundleName());
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported variable: " + segment.variable);
+            }
+        }
+        return builder.toString();
+    }
+
+    private static String localeName(final Locale locale) {
+        if (locale == null) {
+            return "default";
+        }
+        return LOCALE_NAMES.computeIfAbsent(locale, it -> orDefault(it.toString()));
+    }
+
+    private static String langName(final Locale locale) {
+        if (locale == null) {
+            return "default";
+        }
+        return LANG_NAMES.computeIfAbsent(locale, it -> orDefault(it.getLanguage()));
+    }
+
+    private static String orDefault(final String value) {
+        return value.isEmpty() ? "default" : value;
+    }
+
+    public static PatternTemplate parse(final String pattern) {
+        final List<Segment> segments = new ArrayList<>();
+        final StringBuilder literal = new StringBuilder();
+        int i = 0;
+        while (i < pattern.length()) {
+            final char c = pattern.charAt(i);
+            final Variable variable = c == '$' ? Variable.at(pattern, i) : null;
+            if (variable == null) {
+                literal.append(c);
+                i++;
+                continue;
+            }
+            if (literal.length() > 0) {
+                segments.add(new Segment(literal.toString(), null));
+                literal.setLength(0);
+            }
+            segments.add(new Segment(null, variable));
+            i += variable.token.length();
+        }
+        if (literal.length() > 0) {
+            segments.add(new Segment(literal.toString(), null));
+        }
+        return new PatternTemplate(segments);
+    }
+
+    private enum Variable {
+        VALUE("$value"), LOCALE("$locale"), LANG("$lang"), BASE("$base");
+
+        private final String token;
+
+        Variable(final String token) {
+            this.token = token;
+        }
+
+        private static Variable at(final String pattern, final int index) {
+            for (final Variable variable : values()) {
+                if (pattern.startsWith(variable.token, index)) {
+                    return variable;
+                }
+            }
+            return null;
+        }
+    }
+
+    private static final class Segment {
+
+        private final String literal;
+
+        private final Variable variable;
+
+        private Segment(final String literal, final Variable variable) {
+            this.literal = literal;
+            this.variable = variable;
+        }
+    }
+}
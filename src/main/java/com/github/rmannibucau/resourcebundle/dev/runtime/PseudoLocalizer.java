@@ -0,0 +1,79 @@
+package com.github.rmannibucau.resourcebundle.dev.runtime;
+
+import java.util.Arrays;
+import java.util.ResourceBundle;
+
+/**
+ * Pseudo-localization: {@code Hello {0}} becomes {@code [Ĥéļļö {0} ~~~]}, accents show the strings which are not
+ * coming from a bundle, the expansion the layouts which can't handle longer translations and the brackets the truncated ones.
+ * {@code MessageFormat} elements (braces, nested ones included) are kept as is, quotes are read as {@code MessageFormat}
+ * does: the text of {@code '{literal}'} is accented as any literal and {@code ''} is a quote, not the start of a quoted text.
+ *
+ * Characters are substituted with a precomputed table in a single pass into an exactly sized buffer.
+ */
+public final class PseudoLocalizer implements ValueFormatter {
+
+    private static final char[] ACCENTS = table();
+
+    private static final char PADDING = '~';
+
+    private final char[] prefix;
+
+    private final char[] suffix;
+
+    private final int expansion;
+
+    /**
+     * @param expansion additional length in percent of the value length.
+     */
+    public PseudoLocalizer(final int expansion, final String prefix, final String suffix) {
+        if (expansion < 0) {
+            throw new IllegalArgumentException("Negative expansion: " + expansion);
+        }
+        this.expansion = expansion;
+        this.prefix = prefix.toCharArray();
+        this.suffix = suffix.toCharArray();
+    }
+
+    @Override
+    public String format(final String value, final ResourceBundle bundle) {
+        final int length = value.length();
+        final int padding = (length * expansion + 99) / 100;
+        final char[] out = new char[prefix.length + length + (padding > 0 ? padding + 1 : 0) + suffix.length];
+        System.arraycopy(prefix, 0, out, 0, prefix.length);
+        int pos = prefix.length;
+        int depth = 0;
+        boolean quoted = false; // '' toggles twice
+        for (int i = 0; i < length; i++) {
+            final char c = value.charAt(i);
+            if (c == '\'') {
+                quoted = !quoted;
+            } else if (c == '{' && !quoted) {
+                depth++;
+            } else if (c == '}' && !quoted && depth > 0) {
+                depth--;
+            }
+            out[pos++] = depth == 0 && c < ACCENTS.length ? ACCENTS[c] : c;
+        }
+        if (padding > 0) {
+            out[pos++] = ' ';
+            Arrays.fill(out, pos, pos + padding, PADDING);
+            pos += padding;
+        }
+        System.arraycopy(suffix, 0, out, pos, suffix.length);
+        return new String(out);
+    }
+
+    private static char[] table() {
+        final char[] table = new char[128];
+        for (char c = 0; c < table.length; c++) {
+            table[c] = c;
+        }
+        final String from = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz";
+        final String to = "ÅƁÇÐÉƑĜĤÎĴĶĻḾÑÖÞǪŔŠŢÛṼŴẊÝŽåƀçðéƒĝĥîĵķļḿñöþǫŕšţûṽŵẋýž";
+        for (int i = 0; i < from.length(); i++) {
+            table[from.charAt(i)] = to.charAt(i);
+        }
+        return table;
+    }
+}
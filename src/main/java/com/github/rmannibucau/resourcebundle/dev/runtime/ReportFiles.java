@@ -0,0 +1,69 @@
+package com.github.rmannibucau.resourcebundle.dev.runtime;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * The tab separated reports of the agent: written next to the target then moved so a reader never sees a partial file.
+ */
+final class ReportFiles {
+
+    private ReportFiles() {
+        // no-op
+    }
+
+    static void write(final Path file, final Content content) throws IOException {
+        final Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        final Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (final BufferedWriter writer = Files.newBufferedWriter(tmp, UTF_8)) {
+            content.write(writer);
+        }
+        try {
+            Files.move(tmp, file, ATOMIC_MOVE, REPLACE_EXISTING);
+        } catch (final AtomicMoveNotSupportedException e) {
+            Files.move(tmp, file, REPLACE_EXISTING);
+        }
+    }
+
+    // tab and new lines are the separators of the reports
+    static String escape(final String value) {
+        if (value.indexOf('\t') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0 && value.indexOf('\\') < 0) {
+            return value;
+        }
+        final StringBuilder builder = new StringBuilder(value.length() + 8);
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            switch (c) {
+            case '\t':
+                builder.append("\\t");
+                break;
+            case '\n':
+                builder.append("\\n");
+                break;
+            case '\r':
+                builder.append("\\r");
+                break;
+            case '\\':
+                builder.append("\\\\");
+                break;
+            default:
+                builder.append(c);
+            }
+        }
+        return builder.toString();
+    }
+
+    interface Content {
+        void write(BufferedWriter writer) throws IOException;
+    }
+}
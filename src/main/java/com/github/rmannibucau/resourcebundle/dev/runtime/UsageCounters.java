@@ -0,0 +1,113 @@
+package com.github.rmannibucau.resourcebundle.dev.runtime;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.ResourceBundle;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lookup counts per base name, bundle locale and key of the included bundles.
+ * Each bundle keeps a reference to the counters of its (base name, locale) so a lookup is a map get and a
+ * {@link LongAdder} increment, the counters survive the bundle (clearCache) and the keys of a bundle are registered
+ * with a zero count when it is first counted so never read keys appear in the snapshot.
+ */
+public final class UsageCounters {
+
+    private static final ConcurrentMap<BundleId, ConcurrentMap<String, LongAdder>> COUNTERS = new ConcurrentHashMap<>();
+
+    private static volatile boolean enabled;
+
+    private static Path snapshotFile;
+
+    // counts of the previous runs, the file is cumulative across restarts
+    private static UsageSnapshot previous;
+
+    private static ScheduledExecutorService writer;
+
+    private UsageCounters() {
+        // no-op
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static synchronized Path getSnapshotFile() {
+        return snapshotFile;
+    }
+
+    public static synchronized void start(final Path file, final long intervalSeconds) {
+        if (enabled) {
+            throw new IllegalStateException("Usage tracking already started");
+        }
+        try {
+            previous = Files.exists(file) ? UsageSnapshot.read(file) : new UsageSnapshot();
+        } catch (final IOException e) {
+            throw new IllegalStateException("Can't read " + file, e);
+        }
+        snapshotFile = file;
+        writer = Executors.newSingleThreadScheduledExecutor(task -> {
+            final Thread thread = new Thread(task, "resource-bundle-dev-usage");
+            thread.setDaemon(true);
+            return thread;
+        });
+        writer.scheduleWithFixedDelay(UsageCounters::writeQuietly, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(UsageCounters::writeQuietly, "resource-bundle-dev-usage-shutdown"));
+        enabled = true;
+        Linker.relink();
+    }
+
+    public static synchronized UsageSnapshot snapshot() {
+        final UsageSnapshot snapshot = new UsageSnapshot().merge(previous == null ? new UsageSnapshot() : previous);
+        for (final Map.Entry<BundleId, ConcurrentMap<String, LongAdder>> bundle : COUNTERS.entrySet()) {
+            for (final Map.Entry<String, LongAdder> key : bundle.getValue().entrySet()) {
+                snapshot.add(bundle.getKey().baseName, bundle.getKey().locale, key.getKey(), key.getValue().sum());
+            }
+        }
+        return snapshot;
+    }
+
+    public static synchronized void write() throws IOException {
+        if (snapshotFile == null) {
+            throw new IllegalStateException("Usage tracking not started");
+        }
+        snapshot().write(snapshotFile);
+    }
+
+    static void count(final ResourceBundle bundle, final BundleState state, final String key, final Object value) {
+        if (!state.isInstrumented(bundle)) {
+            return;
+        }
+        final ConcurrentMap<String, LongAdder> counters = state.getUsage(bundle);
+        LongAdder counter = counters.get(key);
+        if (counter == null) { // keys added after the registration (handleGetObject computing them)
+            counter = counters.computeIfAbsent(key, k -> new LongAdder());
+        }
+        counter.increment();
+    }
+
+    static ConcurrentMap<String, LongAdder> register(final ResourceBundle bundle) {
+        return COUNTERS.computeIfAbsent(BundleId.of(bundle), id -> {
+            final ConcurrentMap<String, LongAdder> counters = new ConcurrentHashMap<>();
+            for (final String key : bundle.keySet()) { // includes the parents, lookups are counted on the requested bundle
+                counters.put(key, new LongAdder());
+            }
+            return counters;
+        });
+    }
+
+    private static void writeQuietly() {
+        try {
+            write();
+        } catch (final IOException | RuntimeException e) {
+            e.printStackTrace(); // no logger
+        }
+    }
+}
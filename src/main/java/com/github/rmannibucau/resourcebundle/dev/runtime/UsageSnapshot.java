@@ -0,0 +1,80 @@
+package com.github.rmannibucau.resourcebundle.dev.runtime;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Key usage counts, one {@code base<TAB>locale<TAB>key<TAB>count} line per key (tab, new lines and
+ * backslash escaped, root locale is an empty column) sorted so snapshots diff well.
+ * Snapshots of several nodes are merged by summing the counts of identical lines,
+ * a key with a zero total was loaded but never read.
+ */
+public final class UsageSnapshot {
+
+    private static final String HEADER = "# resource-bundle-dev key usage: base, locale, key, count";
+
+    // the escaped base/locale/key columns, they are only unescaped by readers of the file
+    private final Map<String, Long> counts = new TreeMap<>();
+
+    public void add(final String baseName, final String locale, final String key, final long count) {
+        add(ReportFiles.escape(baseName) + '\t' + ReportFiles.escape(locale) + '\t' + ReportFiles.escape(key), count);
+    }
+
+    public UsageSnapshot merge(final UsageSnapshot other) {
+        other.counts.forEach(this::add);
+        return this;
+    }
+
+    public int size() {
+        return counts.size();
+    }
+
+    public long unused() {
+        return counts.values().stream().filter(it -> it == 0).count();
+    }
+
+    private void add(final String columns, final long count) {
+        counts.merge(columns, count, Long::sum);
+    }
+
+    public static UsageSnapshot read(final Path file) throws IOException {
+        final UsageSnapshot snapshot = new UsageSnapshot();
+        try (final BufferedReader reader = Files.newBufferedReader(file, UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                final int separator = line.lastIndexOf('\t');
+                if (separator < 0) {
+                    throw new IOException("Invalid usage line in " + file + ": '" + line + "'");
+                }
+                try {
+                    snapshot.add(line.substring(0, separator), Long.parseLong(line.substring(separator + 1)));
+                } catch (final NumberFormatException e) {
+                    throw new IOException("Invalid usage count in " + file + ": '" + line + "'", e);
+                }
+            }
+        }
+        return snapshot;
+    }
+
+    public void write(final Path file) throws IOException {
+        ReportFiles.write(file, writer -> {
+            writer.write(HEADER);
+            writer.newLine();
+            for (final Map.Entry<String, Long> entry : counts.entrySet()) {
+                writer.write(entry.getKey());
+                writer.write('\t');
+                writer.write(Long.toString(entry.getValue()));
+                writer.newLine();
+            }
+        });
+    }
+}
@@ -0,0 +1,11 @@
+package com.github.rmannibucau.resourcebundle.dev.runtime;
+
+import java.util.ResourceBundle;
+
+/**
+ * Decoration of one string value, {@link PatternTemplate} or {@link PseudoLocalizer}.
+ */
+public interface ValueFormatter {
+
+    String format(String value, ResourceBundle bundle);
+}
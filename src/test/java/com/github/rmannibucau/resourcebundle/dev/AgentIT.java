@@ -0,0 +1,248 @@
+package com.github.rmannibucau.resourcebundle.dev;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
+import static java.util.stream.Collectors.toList;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import jdk.jfr.consumer.RecordingFile;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.github.rmannibucau.resourcebundle.dev.it.BundleApp;
+import com.github.rmannibucau.resourcebundle.dev.it.Dedup;
+import com.github.rmannibucau.resourcebundle.dev.it.NestedBundle;
+
+/**
+ * Runs {@link BundleApp} in a JVM of the JDK running the build with the packaged agent,
+ * the CI runs it for each supported JDK since the instrumented {@code ResourceBundle} internals differ.
+ */
+class AgentIT {
+
+    @Test
+    void decorate() throws Exception {
+        assertDecorated(run("active=true|includes=it.messages"));
+    }
+
+    @Test
+    void merged() throws Exception { // the second round uses a table built after the clearCache
+        assertDecorated(run("active=true|includes=it.messages|merged=true"));
+    }
+
+    @Test
+    void cache() throws Exception {
+        final List<String> lines = run("active=true|includes=it.messages|cache=true|pattern=$base:$value");
+        assertTrue(lines.contains("greeting=it.messages:Bonjour"), lines::toString);
+        assertTrue(lines.contains("other=it.messages:Autre"), lines::toString);
+    }
+
+    @Test
+    void classCache(@TempDir final Path work) throws Exception {
+        final String args = "active=true|includes=it.messages|decorate=false|messageFormat=true|classCache=" + work;
+        run(args, "messageFormat");
+        final Map<String, FileTime> entries = new TreeMap<>();
+        try (final Stream<Path> files = Files.list(work)) {
+            for (final Path file : (Iterable<Path>) files::iterator) {
+                entries.put(file.getFileName().toString(), Files.getLastModifiedTime(file));
+            }
+        }
+        assertEquals(asList("MessageFormat", "ResourceBundle"), entries.keySet().stream()
+                .map(it -> it.substring(0, it.indexOf('-'))).collect(toList()), entries::toString);
+
+        // served from the cache, the entries are not written again
+        final List<String> lines = run(args, "messageFormat");
+        assertTrue(lines.contains("Transformed ResourceBundle from " + work), lines::toString);
+        assertTrue(lines.contains("Transformed MessageFormat from " + work), lines::toString);
+        assertEquals(asList("welcome=Bonjour Marie", "parses=1"), lines.subList(lines.size() - 2, lines.size()));
+        for (final Map.Entry<String, FileTime> entry : entries.entrySet()) {
+            assertEquals(entry.getValue(), Files.getLastModifiedTime(work.resolve(entry.getKey())), entry::getKey);
+        }
+    }
+
+    @Test
+    void usage(@TempDir final Path work) throws Exception {
+        final Path usage = work.resolve("usage.tsv");
+        run("active=true|decorate=false|includes=it.messages|usage=" + usage);
+        assertTrue(readLines(usage).contains("it.messages\tfr_CA\tgreeting\t2"), () -> readLines(usage).toString());
+        assertTrue(readLines(usage).contains("it.messages\tfr_CA\twelcome\t0"), () -> readLines(usage).toString());
+
+        run("active=true|decorate=false|includes=it.messages|usage=" + usage); // cumulative
+        assertTrue(readLines(usage).contains("it.messages\tfr_CA\tgreeting\t4"), () -> readLines(usage).toString());
+
+        final Path merged = work.resolve("merged.tsv");
+        execute(emptyList(), System.getProperty("resource-bundle-dev.agent"), UsageMerge.class.getName(),
+                merged.toString(), usage.toString(), usage.toString());
+        assertTrue(readLines(merged).contains("it.messages\tfr_CA\tgreeting\t8"), () -> readLines(merged).toString());
+        assertTrue(readLines(merged).contains("it.messages\tfr_CA\twelcome\t0"), () -> readLines(merged).toString());
+    }
+
+    @Test
+    void deduplicate(@TempDir final Path work) throws Exception {
+        final Path report = work.resolve("footprint.tsv");
+        final List<String> lines = run("active=true|decorate=false|includes=" + Dedup.class.getName()
+                + "|deduplicate=" + report, "dedup");
+        // the lookup tables of both the PropertyResourceBundle and the ListResourceBundle got the canonical value
+        assertEquals(asList("brand=Acme", "same=true"), lines.subList(lines.size() - 2, lines.size()));
+
+        final List<String> footprint = readLines(report);
+        final String[] total = footprint.stream().filter(it -> it.startsWith("total\t")).findFirst()
+                .orElseThrow(() -> new AssertionError(footprint.toString()))
+                .split("\t");
+        assertEquals("4", total[1], footprint::toString); // entries
+        assertTrue(Long.parseLong(total[3]) > 0, footprint::toString); // saved bytes, the second brand
+        assertTrue(footprint.stream().anyMatch(it -> it.startsWith("bundle\t" + Dedup.class.getName() + "\tfr\t2\t")),
+                footprint::toString);
+    }
+
+    @Test
+    void fallbacks(@TempDir final Path work) throws Exception {
+        final Path report = work.resolve("fallbacks.txt");
+        run("active=true|decorate=false|includes=it.messages|fallbacks=" + report);
+        final String content = new String(Files.readAllBytes(report), UTF_8);
+        assertTrue(content.contains("root.only"), content);
+    }
+
+    @Test
+    void rules(@TempDir final Path work) throws Exception {
+        final Path rules = Files.write(work.resolve("rules.txt"), asList(
+                "it.messages root. -",
+                "it.messages * $base:$value"), UTF_8);
+        final List<String> lines = run("active=true|includes=it.messages|rules=" + rules);
+        assertTrue(lines.contains("greeting=it.messages:Bonjour"), lines::toString);
+        assertTrue(lines.contains("root.only=Root"), lines::toString);
+    }
+
+    @Test
+    void messageFormat() throws Exception { // undecorated values are parsed once too
+        final List<String> lines = run(
+                "active=true|includes=it.messages|decorate=false|messageFormat=true", "messageFormat");
+        assertEquals(asList("welcome=Bonjour Marie", "welcome=Bonjour Marie", "welcome=Bonjour Marie", "parses=1"),
+                lines.subList(lines.size() - 4, lines.size()));
+    }
+
+    @Test
+    void binaryBundles() throws Exception { // it/compiled.rbd is the plugin output with "(compiled)" in the values
+        final List<String> lines = run(
+                "active=true|includes=it.compiled|decorate=false|binaryBundles=true", "compiled");
+        assertEquals(asList("bundle=BinaryBundle", "greeting=Bonjour (compiled)"),
+                lines.subList(lines.size() - 2, lines.size()));
+    }
+
+    @Test
+    void attach() throws Exception {
+        final List<String> options = new ArrayList<>();
+        options.add("-Djdk.attach.allowAttachSelf=true"); // java 9+
+        options.add("-XX:+IgnoreUnrecognizedVMOptions");
+        options.add("-XX:+EnableDynamicAgentLoading"); // java 21+ warning
+        final File tools = new File(System.getProperty("java.home"), "../lib/tools.jar"); // java 8
+        final List<String> lines = execute(options,
+                tools.isFile() ? app() + File.pathSeparator + tools.getAbsolutePath() : app(),
+                BundleApp.class.getName(),
+                "attach", System.getProperty("resource-bundle-dev.agent"));
+        final List<String> greetings = lines.stream().filter(it -> it.startsWith("greeting=")).collect(toList());
+        // retransformed, handleGetObject is decorated so the bundle answering the key is the decorated one
+        assertEquals(asList("greeting=Bonjour", "greeting=[fr] Bonjour", "greeting=Bonjour"), greetings,
+                lines::toString);
+    }
+
+    @Test
+    void flightRecorder(@TempDir final Path work) throws Exception {
+        final Path dump = work.resolve("recording.jfr");
+        final String agent = System.getProperty("resource-bundle-dev.agent");
+        final List<String> lines = execute(asList("-XX:StartFlightRecording=filename=" + dump,
+                "-javaagent:" + agent + "=active=true|includes=it.excluded|decorate=false"), app(),
+                BundleApp.class.getName(), "nested");
+        assertTrue(lines.contains("nested=Plain"), lines::toString);
+        // the getBundle nested in the constructor and the failed one don't replace the outer event
+        final List<String> loads = RecordingFile.readAllEvents(dump).stream()
+                .filter(it -> it.getEventType().getName().endsWith(".dev.BundleLoad"))
+                .map(it -> it.getString("baseName") + ':' + it.getBoolean("included"))
+                .sorted()
+                .collect(toList());
+        assertEquals(asList(NestedBundle.class.getName() + ":false", "it.excluded:true"), loads);
+    }
+
+    @Test
+    void preload() throws Exception { // fr_CA, fr and root bundles
+        final List<String> lines = run(
+                "active=true|includes=it.messages|preload=includes|preloadLocales=fr_CA", "preload", "3");
+        assertEquals("instrumented=3", lines.get(lines.size() - 1), lines::toString);
+    }
+
+    @Test
+    void inactive() throws Exception {
+        final List<String> lines = run("active=false");
+        assertTrue(lines.contains("greeting=Bonjour"), lines::toString);
+    }
+
+    private static void assertDecorated(final List<String> lines) {
+        final List<String> round = asList(
+                "greeting=[fr_CA] Bonjour", "root.only=[fr_CA] Root", "other=[fr_CA] Autre", "missing=none", "excluded=Plain");
+        assertEquals(round, lines.subList(lines.size() - 10, lines.size() - 5));
+        assertEquals(round, lines.subList(lines.size() - 5, lines.size()));
+    }
+
+    private List<String> run(final String agentArgs, final String... appArgs) throws IOException, InterruptedException {
+        final String agent = System.getProperty("resource-bundle-dev.agent");
+        return execute(singletonList("-javaagent:" + agent + '=' + agentArgs), app(), BundleApp.class.getName(),
+                appArgs);
+    }
+
+    private static List<String> readLines(final Path file) {
+        try {
+            return Files.readAllLines(file, UTF_8);
+        } catch (final IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String app() {
+        return System.getProperty("resource-bundle-dev.app"); // failsafe classpath is a manifest jar
+    }
+
+    private List<String> execute(final List<String> options, final String classPath, final String main,
+                                 final String... args) throws IOException, InterruptedException {
+        final List<String> command = new ArrayList<>();
+        command.add(new File(System.getProperty("java.home"), "bin/java").getAbsolutePath());
+        command.add("-Duser.language=en");
+        command.addAll(options);
+        command.add("-cp");
+        command.add(classPath);
+        command.add(main);
+        command.addAll(asList(args));
+        final Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        final String output;
+        try (final InputStream stream = process.getInputStream()) {
+            final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            final byte[] bytes = new byte[8192];
+            int read;
+            while ((read = stream.read(bytes)) >= 0) {
+                buffer.write(bytes, 0, read);
+            }
+            output = new String(buffer.toByteArray(), UTF_8);
+        }
+        assertTrue(process.waitFor(1, TimeUnit.MINUTES), output);
+        assertEquals(0, process.exitValue(), output);
+        final List<String> lines = asList(output.split("\r?\n"));
+        assertTrue(lines.stream().noneMatch(it -> it.contains("Exception") || it.contains("Error")), output);
+        return lines;
+    }
+}
@@ -0,0 +1,118 @@
+package com.github.rmannibucau.resourcebundle.dev.it;
+
+import java.lang.management.ManagementFactory;
+import java.text.MessageFormat;
+import java.util.Locale;
+import java.util.MissingResourceException;
+import java.util.ResourceBundle;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Started by {@link com.github.rmannibucau.resourcebundle.dev.AgentIT} with the agent, prints one line per lookup.
+ * The first argument, if any, selects another scenario.
+ */
+public final class BundleApp {
+    private static final String MBEAN = "com.github.rmannibucau.resourcebundle.dev:type=ResourceBundleDev";
+
+    private BundleApp() {
+        // no-op
+    }
+
+    public static void main(final String[] args) throws Exception {
+        if (args.length > 0) {
+            switch (args[0]) {
+                case "messageFormat":
+                    messageFormat();
+                    return;
+                case "compiled":
+                    compiled();
+                    return;
+                case "preload":
+                    preload(Integer.parseInt(args[1]));
+                    return;
+                case "dedup":
+                    final ResourceBundle fr = ResourceBundle.getBundle(Dedup.class.getName(), Locale.FRENCH);
+                    final ResourceBundle root = ResourceBundle.getBundle(Dedup.class.getName(), Locale.ROOT);
+                    System.out.println("brand=" + fr.getString("brand"));
+                    System.out.println("same=" + (fr.getString("brand") == root.getString("brand")));
+                    return;
+                case "nested":
+                    final ResourceBundle nested = ResourceBundle.getBundle(NestedBundle.class.getName());
+                    System.out.println("nested=" + nested.getString("greeting"));
+                    return;
+                case "attach":
+                    attach(args[1]);
+                    return;
+                default:
+                    throw new IllegalArgumentException(args[0]);
+            }
+        }
+        for (int i = 0; i < 2; i++) { // second round after a clearCache
+            final ResourceBundle frCa = ResourceBundle.getBundle("it.messages", Locale.CANADA_FRENCH);
+            System.out.println("greeting=" + frCa.getString("greeting"));
+            System.out.println("root.only=" + frCa.getString("root.only"));
+            System.out.println("other=" + frCa.getString("other"));
+            try {
+                System.out.println("missing=" + frCa.getString("missing"));
+            } catch (final MissingResourceException e) {
+                System.out.println("missing=none");
+            }
+            System.out.println("excluded=" + ResourceBundle.getBundle("it.excluded").getString("greeting"));
+            ResourceBundle.clearCache();
+        }
+    }
+
+    private static void messageFormat() throws JMException {
+        final ResourceBundle frCa = ResourceBundle.getBundle("it.messages", Locale.CANADA_FRENCH);
+        for (int i = 0; i < 3; i++) {
+            System.out.println("welcome=" + MessageFormat.format(frCa.getString("welcome"), "Marie"));
+        }
+        System.out.println("parses=" + attribute("MessageFormatParses"));
+    }
+
+    // the application never calls getBundle, the agent loads the bundles in background
+    private static void preload(final int expected) throws JMException, InterruptedException {
+        final long end = System.nanoTime() + TimeUnit.MINUTES.toNanos(1);
+        long instrumented = (Long) attribute("InstrumentedBundles");
+        while (instrumented < expected && System.nanoTime() < end) {
+            Thread.sleep(50);
+            instrumented = (Long) attribute("InstrumentedBundles");
+        }
+        System.out.println("instrumented=" + instrumented);
+    }
+
+    private static void compiled() {
+        final ResourceBundle frCa = ResourceBundle.getBundle("it.compiled", Locale.CANADA_FRENCH);
+        System.out.println("bundle=" + frCa.getClass().getSimpleName());
+        System.out.println("greeting=" + frCa.getString("greeting"));
+    }
+
+    // started without the agent, the retransformed ResourceBundle decorates the bundles already loaded
+    private static void attach(final String agent) throws Exception {
+        final ResourceBundle frCa = ResourceBundle.getBundle("it.messages", Locale.CANADA_FRENCH);
+        System.out.println("greeting=" + frCa.getString("greeting"));
+        loadAgent(agent, "active=true|includes=it.messages");
+        System.out.println("greeting=" + frCa.getString("greeting"));
+        loadAgent(agent, "active=false");
+        System.out.println("greeting=" + frCa.getString("greeting"));
+    }
+
+    // reflection since the attach API is in tools.jar on java 8
+    private static void loadAgent(final String agent, final String agentArgs) throws Exception {
+        final String pid = ManagementFactory.getRuntimeMXBean().getName().split("@")[0];
+        final Class<?> type = Class.forName("com.sun.tools.attach.VirtualMachine");
+        final Object vm = type.getMethod("attach", String.class).invoke(null, pid);
+        try {
+            type.getMethod("loadAgent", String.class, String.class).invoke(vm, agent, agentArgs);
+        } finally {
+            type.getMethod("detach").invoke(vm);
+        }
+    }
+
+    private static Object attribute(final String name) throws JMException {
+        return ManagementFactory.getPlatformMBeanServer().getAttribute(new ObjectName(MBEAN), name);
+    }
+}
@@ -0,0 +1,17 @@
+package com.github.rmannibucau.resourcebundle.dev.it;
+
+import java.util.ListResourceBundle;
+
+/**
+ * Root of a chain mixing a {@code ListResourceBundle} and a {@code PropertyResourceBundle} ({@code Dedup_fr}),
+ * the brand is not a literal so each bundle has its own instance until they are deduplicated.
+ */
+public class Dedup extends ListResourceBundle {
+    @Override
+    protected Object[][] getContents() {
+        return new Object[][] {
+                { "brand", new StringBuilder("Ac").append("me").toString() },
+                { "title", "Title" }
+        };
+    }
+}
@@ -0,0 +1,27 @@
+package com.github.rmannibucau.resourcebundle.dev.it;
+
+import java.util.ListResourceBundle;
+import java.util.MissingResourceException;
+import java.util.ResourceBundle;
+
+/**
+ * Loads other bundles from its constructor, so its {@code getBundle} call is the outer one of nested calls.
+ */
+public class NestedBundle extends ListResourceBundle {
+
+    private final String greeting;
+
+    public NestedBundle() {
+        try {
+            ResourceBundle.getBundle("it.missing");
+        } catch (final MissingResourceException e) {
+            // expected, the nested call failed
+        }
+        greeting = ResourceBundle.getBundle("it.excluded").getString("greeting");
+    }
+
+    @Override
+    protected Object[][] getContents() {
+        return new Object[][] { { "greeting", greeting } };
+    }
+}
@@ -0,0 +1,17 @@
+package com.github.rmannibucau.resourcebundle.dev.it;
+
+import java.util.Optional;
+import java.util.function.Supplier;
+
+/**
+ * Application code of the call site sampler test, the lookup goes through {@code java.util} frames.
+ */
+public final class SampledCaller {
+    private SampledCaller() {
+        // no-op
+    }
+
+    public static String lookup(final Supplier<String> lookup) {
+        return Optional.of(lookup).map(Supplier::get).orElse(null);
+    }
+}
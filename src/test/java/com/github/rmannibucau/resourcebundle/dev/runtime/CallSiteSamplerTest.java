@@ -0,0 +1,83 @@
+package com.github.rmannibucau.resourcebundle.dev.runtime;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.util.ListResourceBundle;
+import java.util.ResourceBundle;
+
+import org.junit.jupiter.api.Test;
+
+import com.github.rmannibucau.resourcebundle.dev.it.SampledCaller;
+
+class CallSiteSamplerTest {
+
+    private static final String CALLER = SampledCaller.class.getName() + "#lookup";
+
+    @Test
+    void spaceSaving() {
+        CallSiteSampler.configure(1, 2);
+        record("a", 3);
+        record("b", 1);
+        assertArrayEquals(new String[]{"caller\tbase\ta\t3\t0\t3", "caller\tbase\tb\t1\t0\t1"}, CallSiteSampler.top());
+
+        record("c", 1); // replaces the least sampled entry and inherits its count
+        assertArrayEquals(new String[]{"caller\tbase\ta\t3\t0\t3", "caller\tbase\tc\t2\t1\t2"}, CallSiteSampler.top());
+
+        record("c", 2);
+        record("d", 2); // a is now the least sampled, d replaces it with an overestimation of 3
+        assertArrayEquals(new String[]{"caller\tbase\td\t5\t3\t5", "caller\tbase\tc\t4\t1\t4"}, CallSiteSampler.top());
+    }
+
+    @Test
+    void estimatedLookups() {
+        CallSiteSampler.configure(1000, 10);
+        record("a", 2);
+        assertArrayEquals(new String[]{"caller\tbase\ta\t2\t0\t2000"}, CallSiteSampler.top());
+    }
+
+    @Test
+    void sampleAttributesTheApplicationCaller() {
+        CallSiteSampler.configure(1, 10);
+        final ResourceBundle bundle = new Bundle();
+        final BundleState state = new BundleState();
+        assertEquals("Hello", SampledCaller.lookup(() -> {
+            CallSiteSampler.sample(bundle, state, "greeting", "Hello");
+            return "Hello";
+        }));
+        assertEquals(1, CallSiteSampler.getSamples());
+        assertArrayEquals(new String[]{CALLER + "\tit.sampled\tgreeting\t1\t0\t1"}, CallSiteSampler.top());
+    }
+
+    @Test
+    void stackTraceCaller() { // java 8
+        assertEquals(CALLER, SampledCaller.lookup(CallSiteSampler.Walker.stackTrace()::caller));
+    }
+
+    @Test
+    void stackWalkerCaller() { // java 9+
+        final CallSiteSampler.Walker walker = CallSiteSampler.Walker.create();
+        assumeTrue(walker.usesStackWalker(), "StackWalker requires java 9");
+        assertEquals(CALLER, SampledCaller.lookup(walker::caller));
+    }
+
+    private static void record(final String key, final int times) {
+        for (int i = 0; i < times; i++) {
+            CallSiteSampler.record("caller", "base", key);
+        }
+    }
+
+    private static final class Bundle extends ListResourceBundle {
+
+        @Override
+        public String getBaseBundleName() {
+            return "it.sampled";
+        }
+
+        @Override
+        protected Object[][] getContents() {
+            return new Object[][]{{"greeting", "Hello"}};
+        }
+    }
+}
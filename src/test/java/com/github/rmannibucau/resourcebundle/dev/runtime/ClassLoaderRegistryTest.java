@@ -0,0 +1,111 @@
+package com.github.rmannibucau.resourcebundle.dev.runtime;
+
+import static java.util.Collections.singletonList;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ListResourceBundle;
+import java.util.Locale;
+import java.util.ResourceBundle;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+
+class ClassLoaderRegistryTest {
+
+    @Test
+    void runningSiblingsAreOnlySuspected() throws IOException {
+        final ClassLoader shared = ClassLoaderRegistryTest.class.getClassLoader();
+        try (final URLClassLoader older = new URLClassLoader(new URL[0], shared);
+             final URLClassLoader newer = new URLClassLoader(new URL[0], shared)) {
+            final ResourceBundle olderBundle = register(older);
+            register(newer);
+
+            assertEquals("suspected", status(older));
+            assertEquals("live", status(newer));
+
+            ClassLoaderRegistry.evictUndeployed();
+            assertSame(olderBundle, ResourceBundle.getBundle("it.messages", Locale.ROOT, older));
+        }
+    }
+
+    @Test
+    void stoppedLoaderIsUndeployed() throws IOException {
+        try (final LifecycleLoader loader = new LifecycleLoader(ClassLoaderRegistryTest.class.getClassLoader())) {
+            final ResourceBundle bundle = register(loader);
+            assertEquals("live", status(loader));
+
+            loader.state = "STOPPED";
+            assertEquals("undeployed", status(loader));
+
+            ClassLoaderRegistry.evictUndeployed();
+            assertNotSame(bundle, ResourceBundle.getBundle("it.messages", Locale.ROOT, loader));
+        }
+    }
+
+    @Test
+    void collectedBundlesArePrunedOnRegistration() throws IOException, InterruptedException {
+        try (final URLClassLoader loader = new URLClassLoader(new URL[0], ClassLoaderRegistryTest.class.getClassLoader())) {
+            final WeakReference<ResourceBundle> collected = registerUnreferenced(loader);
+            for (int i = 0; i < 100 && collected.get() != null; i++) {
+                System.gc();
+                Thread.sleep(10);
+            }
+            assertEquals(1, ClassLoaderRegistry.registeredBundles(loader));
+
+            final ResourceBundle live = new Messages(); // the registration expunges the collected one
+            for (int i = 0; i < 100 && ClassLoaderRegistry.registeredBundles(loader) != 1; i++) {
+                ClassLoaderRegistry.register(loader, singletonList(live));
+                Thread.sleep(10);
+            }
+            assertEquals(1, ClassLoaderRegistry.registeredBundles(loader));
+        }
+    }
+
+    private static WeakReference<ResourceBundle> registerUnreferenced(final ClassLoader loader) {
+        final ResourceBundle bundle = new Messages(); // not in the JDK cache
+        ClassLoaderRegistry.register(loader, singletonList(bundle));
+        return new WeakReference<>(bundle);
+    }
+
+    private static ResourceBundle register(final ClassLoader loader) {
+        final ResourceBundle bundle = ResourceBundle.getBundle("it.messages", Locale.ROOT, loader);
+        ClassLoaderRegistry.register(loader, singletonList(bundle));
+        return bundle;
+    }
+
+    private static String status(final ClassLoader loader) {
+        final String prefix = ClassLoaderRegistry.describe(loader) + '\t';
+        return Stream.of(ClassLoaderRegistry.report())
+                .filter(it -> it.startsWith(prefix))
+                .map(it -> it.split("\t")[2])
+                .findFirst()
+                .orElse(null);
+    }
+
+    public static final class Messages extends ListResourceBundle {
+        @Override
+        protected Object[][] getContents() {
+            return new Object[][] { { "greeting", "Hello" } };
+        }
+    }
+
+    // Tomcat like loader exposing its lifecycle state
+    public static final class LifecycleLoader extends URLClassLoader {
+
+        private volatile String state = "STARTED";
+
+        private LifecycleLoader(final ClassLoader parent) {
+            super(new URL[0], parent);
+        }
+
+        public String getStateName() {
+            return state;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.github.rmannibucau.resourcebundle.dev.runtime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+class DecorationScopeTest {
+
+    @Test
+    void nested() {
+        assertFalse(DecorationScope.isDecorated());
+        final DecorationScope outer = DecorationScope.open();
+        final DecorationScope inner = DecorationScope.open();
+        assertTrue(DecorationScope.isDecorated());
+        inner.close();
+        inner.close(); // idempotent
+        assertTrue(DecorationScope.isDecorated());
+        outer.close();
+        assertFalse(DecorationScope.isDecorated());
+    }
+
+    @Test
+    void otherThreads() throws Exception {
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try (final DecorationScope scope = DecorationScope.open()) {
+            assertFalse(executor.submit(DecorationScope::isDecorated).get());
+            final Callable<Boolean> wrapped = DecorationScope.wrap(DecorationScope::isDecorated);
+            assertTrue(executor.submit(wrapped).get());
+            assertFalse(executor.submit(DecorationScope::isDecorated).get());
+            assertThrows(Exception.class, () -> executor.submit(scope::close).get());
+        } finally {
+            executor.shutdownNow();
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        }
+        assertFalse(DecorationScope.isDecorated());
+    }
+
+    @Test
+    void endedThreadWithOpenScope() throws InterruptedException {
+        final int open = DecorationScope.getOpenScopes();
+        final WeakReference<Thread> ended = endWithOpenScopes(open);
+        for (int i = 0; i < 100 && (ended.get() != null || DecorationScope.getOpenScopes() != open); i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertEquals(open, DecorationScope.getOpenScopes());
+    }
+
+    private static WeakReference<Thread> endWithOpenScopes(final int open) throws InterruptedException {
+        final Thread thread = new Thread(() -> {
+            DecorationScope.open();
+            DecorationScope.open();
+        });
+        thread.start();
+        thread.join();
+        assertEquals(open + 2, DecorationScope.getOpenScopes()); // until the thread is collected
+        return new WeakReference<>(thread);
+    }
+}
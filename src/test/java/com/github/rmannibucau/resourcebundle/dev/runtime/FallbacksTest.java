@@ -0,0 +1,74 @@
+package com.github.rmannibucau.resourcebundle.dev.runtime;
+
+import static java.util.Collections.singletonList;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.ListResourceBundle;
+import java.util.Locale;
+import java.util.ResourceBundle;
+import java.util.concurrent.ConcurrentMap;
+
+import org.junit.jupiter.api.Test;
+
+class FallbacksTest {
+
+    private static final String BASE = FallbacksTest.class.getName() + "$Messages";
+
+    private static final ResourceBundle.Control CONTROL =
+            ResourceBundle.Control.getNoFallbackControl(singletonList("java.class"));
+
+    @Test
+    void invalidateLocaleAndChildren() {
+        final ResourceBundle root = bundle(BASE, Locale.ROOT);
+        final ResourceBundle fr = bundle(BASE, Locale.FRENCH);
+        final ResourceBundle frCa = bundle(BASE, Locale.CANADA_FRENCH);
+        final ResourceBundle extra = bundle(BASE + "_extra", Locale.ROOT);
+        final ConcurrentMap<String, Fallbacks.Resolution> rootResolutions = Fallbacks.register(root);
+        final ConcurrentMap<String, Fallbacks.Resolution> frResolutions = Fallbacks.register(fr);
+        final ConcurrentMap<String, Fallbacks.Resolution> frCaResolutions = Fallbacks.register(frCa);
+        final ConcurrentMap<String, Fallbacks.Resolution> extraResolutions = Fallbacks.register(extra);
+
+        Fallbacks.invalidate(BASE + "_fr");
+        assertSame(rootResolutions, Fallbacks.register(root));
+        assertNotSame(frResolutions, Fallbacks.register(fr));
+        assertNotSame(frCaResolutions, Fallbacks.register(frCa));
+        assertSame(extraResolutions, Fallbacks.register(extra));
+
+        Fallbacks.invalidate(BASE); // the root bundle has an other base name as sibling, not as child
+        assertNotSame(rootResolutions, Fallbacks.register(root));
+        assertSame(extraResolutions, Fallbacks.register(extra));
+    }
+
+    @Test
+    void invalidateAllLocales() {
+        final ResourceBundle frCa = bundle(BASE, Locale.CANADA_FRENCH);
+        final ResourceBundle extra = bundle(BASE + "_extra", Locale.ROOT);
+        final ConcurrentMap<String, Fallbacks.Resolution> frCaResolutions = Fallbacks.register(frCa);
+        final ConcurrentMap<String, Fallbacks.Resolution> extraResolutions = Fallbacks.register(extra);
+
+        Fallbacks.invalidateAll(BASE);
+        assertNotSame(frCaResolutions, Fallbacks.register(frCa));
+        assertSame(extraResolutions, Fallbacks.register(extra));
+    }
+
+    private static ResourceBundle bundle(final String baseName, final Locale locale) {
+        return ResourceBundle.getBundle(baseName, locale, FallbacksTest.class.getClassLoader(), CONTROL);
+    }
+
+    public static class Messages extends ListResourceBundle {
+        @Override
+        protected Object[][] getContents() {
+            return new Object[][] { { "greeting", "Hello" } };
+        }
+    }
+
+    public static class Messages_fr extends Messages {
+    }
+
+    public static class Messages_fr_CA extends Messages {
+    }
+
+    public static class Messages_extra extends Messages {
+    }
+}
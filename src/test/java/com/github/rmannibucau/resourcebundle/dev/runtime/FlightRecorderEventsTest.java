@@ -0,0 +1,62 @@
+package com.github.rmannibucau.resourcebundle.dev.runtime;
+
+import static java.util.Arrays.asList;
+import static java.util.stream.Collectors.toList;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Locale;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import org.junit.jupiter.api.Test;
+
+class FlightRecorderEventsTest {
+
+    @Test
+    void nestedAndFailedLoads() throws IOException {
+        final Path dump = Files.createTempFile("flight-recorder-events-test", ".jfr");
+        try (final Recording recording = new Recording()) {
+            recording.enable(FlightRecorderEvents.BundleLoad.class);
+            recording.start();
+
+            final String outer = "outer";
+            final String inner = "inner";
+            final String failed = "failed";
+            final String next = "next";
+            FlightRecorderEvents.onGetBundleStart(outer, null);
+            FlightRecorderEvents.onGetBundleStart(inner, null); // from the constructor of the outer bundle
+            FlightRecorderEvents.onBundleLoaded(null, null);
+            FlightRecorderEvents.onGetBundleEnd(null, inner, Locale.ROOT, null);
+            FlightRecorderEvents.onBundleLoaded(null, null);
+            FlightRecorderEvents.onBundleLoaded(null, null);
+            FlightRecorderEvents.onGetBundleEnd(null, outer, Locale.ROOT, null);
+
+            FlightRecorderEvents.onGetBundleStart(failed, null);
+            FlightRecorderEvents.onBundleLoaded(null, null);
+            FlightRecorderEvents.onGetBundleFailed(failed); // MissingResourceException
+            FlightRecorderEvents.onGetBundleStart(next, null);
+            FlightRecorderEvents.onBundleLoaded(null, null);
+            FlightRecorderEvents.onGetBundleEnd(null, next, Locale.ROOT, null);
+
+            recording.stop();
+            recording.dump(dump);
+            final List<String> events = RecordingFile.readAllEvents(dump).stream()
+                    .map(FlightRecorderEventsTest::describe)
+                    .sorted()
+                    .collect(toList());
+            assertEquals(asList("inner=1", "next=1", "outer=2"), events);
+        } finally {
+            Files.delete(dump);
+        }
+    }
+
+    private static String describe(final RecordedEvent event) {
+        return event.getString("baseName") + '=' + event.getInt("bundles");
+    }
+}
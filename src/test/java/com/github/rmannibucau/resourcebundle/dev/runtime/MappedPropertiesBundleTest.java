@@ -0,0 +1,104 @@
+package com.github.rmannibucau.resourcebundle.dev.runtime;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.PropertyResourceBundle;
+import java.util.ResourceBundle;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Differential test: each content must give the same entries as {@code PropertyResourceBundle} of the running JDK.
+ */
+class MappedPropertiesBundleTest {
+
+    @Test
+    void separators() throws IOException {
+        assertSameEntries("a=b\nc:d\ne f\ng\t=  h\n  i = j  \nk==l\nm = : n\no:=p\n=empty key\nkey only\nq\f=\fr\n");
+    }
+
+    @Test
+    void escapes() throws IOException {
+        assertSameEntries("tabs=a\\tb\\nc\\rd\\fe\n"
+                + "unicode=\\u00e9t\\u00E9 \\u0041\n"
+                + "backslash=a\\\\b\n"
+                + "unknown=\\q\\z\\ \n"
+                + "escaped\\=key=v1\n"
+                + "escaped\\:key:v2\n"
+                + "escaped\\ key v3\n"
+                + "\\#not\\!comment=v4\n"
+                + "leading=\\  spaces\n");
+    }
+
+    @Test
+    void continuations() throws IOException {
+        assertSameEntries("a=first \\\n    second\n"
+                + "b=crlf \\\r\n\t continued\r\n"
+                + "c=cr \\\r   only\r"
+                + "d=not continued \\\\\n"
+                + "e\\\n  key=split key\n"
+                + "f = \\\n  \\\n  empty lines\n"
+                + "g=continued comment \\\n# not a comment\n"
+                + "h=eof \\");
+    }
+
+    @Test
+    void lineEndings() throws IOException {
+        assertSameEntries("a=cr\rb=crlf\r\nc=lf\nd=last");
+        assertSameEntries("\r\r\n\n  \t\r a = b \r");
+    }
+
+    @Test
+    void comments() throws IOException {
+        assertSameEntries("# comment\n! other comment\n   # indented\n#comment ending with \\\nkey=value\n"
+                + "value=with # hash\nbang=! not a comment\n#last");
+    }
+
+    @Test
+    void duplicatesAndEmptyValues() throws IOException {
+        assertSameEntries("a=1\nb=\nc\na=2\nd=   \na=3\n");
+    }
+
+    @Test
+    void nonAscii() throws IOException {
+        assertSameEntries("cl\u00e9=\u00e9t\u00e9 \u20ac \ud83d\ude00\n\u00e9\\u00e9=mixed\n");
+    }
+
+    @Test
+    void latin1() throws IOException { // not valid UTF-8, java 9+ falls back on ISO-8859-1
+        assertSameEntries("cl\u00e9=\u00e9t\u00e9\nother=caf\u00e9 \\\n  cr\u00e8me\n".getBytes(ISO_8859_1));
+    }
+
+    @Test
+    void manyKeys() throws IOException { // several rehashes of the index
+        final StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            content.append("key.").append(i).append(i % 3 == 0 ? " = " : ":").append("value ").append(i).append('\n');
+        }
+        assertSameEntries(content.toString());
+    }
+
+    private static void assertSameEntries(final String content) throws IOException {
+        assertSameEntries(content.getBytes(UTF_8));
+    }
+
+    private static void assertSameEntries(final byte[] bytes) throws IOException {
+        assertEquals(entries(new PropertyResourceBundle(new ByteArrayInputStream(bytes))),
+                entries(new MappedPropertiesBundle(ByteBuffer.wrap(bytes))), () -> new String(bytes, ISO_8859_1));
+    }
+
+    private static Map<String, Object> entries(final ResourceBundle bundle) {
+        final Map<String, Object> entries = new TreeMap<>();
+        for (final String key : bundle.keySet()) {
+            entries.put(key, bundle.getObject(key));
+        }
+        return entries;
+    }
+}
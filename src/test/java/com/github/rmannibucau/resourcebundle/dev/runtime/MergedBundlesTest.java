@@ -0,0 +1,145 @@
+package com.github.rmannibucau.resourcebundle.dev.runtime;
+
+import static java.lang.invoke.MethodType.methodType;
+import static java.util.Collections.emptyEnumeration;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.util.Enumeration;
+import java.util.ListResourceBundle;
+import java.util.MissingResourceException;
+import java.util.ResourceBundle;
+
+import org.junit.jupiter.api.Test;
+
+class MergedBundlesTest {
+
+    private static final MethodHandle PARENT;
+
+    private static final MethodHandle OWN_VALUE;
+
+    static {
+        try {
+            final MethodHandles.Lookup lookup = MethodHandles.lookup();
+            PARENT = lookup.findStatic(MergedBundlesTest.class, "parentOf",
+                    methodType(ResourceBundle.class, ResourceBundle.class));
+            OWN_VALUE = lookup.findVirtual(ListResourceBundle.class, "handleGetObject",
+                    methodType(Object.class, String.class))
+                    .asType(methodType(Object.class, ResourceBundle.class, String.class));
+        } catch (final ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Test
+    void sameValuesAsTheChain() throws Throwable {
+        final Chained leaf = chain();
+        final BundleState state = merged(leaf);
+        for (final String key : leaf.keySet()) {
+            assertEquals(leaf.getObject(key), MergedBundles.lookup(leaf, state, key), key);
+            assertEquals(leaf.getObject(key), MergedBundles.lookup(leaf, state, new String(key)), key); // not interned
+        }
+        assertEquals("ca3", MergedBundles.lookup(leaf, state, "c"));
+        assertEquals("fr2", MergedBundles.lookup(leaf, state, "b"));
+        assertEquals("1", MergedBundles.lookup(leaf, state, "a"));
+    }
+
+    @Test
+    void manyKeys() throws Throwable {
+        final Object[][] rootEntries = new Object[3000][];
+        final Object[][] leafEntries = new Object[1000][];
+        for (int i = 0; i < rootEntries.length; i++) {
+            rootEntries[i] = new Object[]{"key." + i, "root " + i};
+        }
+        for (int i = 0; i < leafEntries.length; i++) {
+            leafEntries[i] = new Object[]{"key." + (i * 3), "leaf " + i};
+        }
+        final Chained leaf = new Chained(leafEntries, new Chained(rootEntries, null));
+        final BundleState state = merged(leaf);
+        for (final String key : leaf.keySet()) {
+            assertEquals(leaf.getObject(key), MergedBundles.lookup(leaf, state, key), key);
+        }
+    }
+
+    @Test
+    void missingKeyGoesThroughTheChain() throws Throwable {
+        final Chained leaf = chain();
+        final BundleState state = merged(leaf);
+        assertNull(MergedBundles.lookup(leaf, state, "missing"));
+        assertNull(MergedBundles.lookup(leaf, state, null));
+        assertThrows(MissingResourceException.class, () -> leaf.getObject("missing"));
+    }
+
+    @Test
+    void ignoredAfterClearCache() throws Throwable {
+        final Chained leaf = chain();
+        final BundleState state = merged(leaf);
+        assertEquals("1", MergedBundles.lookup(leaf, state, "a"));
+
+        DevState.invalidateCaches(); // what clearCache() calls
+        assertNull(MergedBundles.lookup(leaf, state, "a"));
+
+        state.setMerged(MergedBundles.merge(leaf, DevState.cacheGeneration(), PARENT, OWN_VALUE));
+        assertEquals("1", MergedBundles.lookup(leaf, state, "a"));
+    }
+
+    @Test
+    void otherBundleTypesAreNotMerged() throws Throwable {
+        final Chained leaf = new Chained(new Object[][]{{"a", "leaf"}}, new ResourceBundle() {
+            @Override
+            protected Object handleGetObject(final String key) {
+                return "computed";
+            }
+
+            @Override
+            public Enumeration<String> getKeys() {
+                return emptyEnumeration();
+            }
+        });
+        final BundleState state = new BundleState();
+        state.setMerged(MergedBundles.merge(leaf, DevState.cacheGeneration(), PARENT, OWN_VALUE));
+        assertNull(MergedBundles.lookup(leaf, state, "a"));
+    }
+
+    // the parent of the computed bundle is never read, the chain is rejected on it
+    private static ResourceBundle parentOf(final ResourceBundle bundle) {
+        return bundle instanceof Chained ? ((Chained) bundle).parent() : null;
+    }
+
+    private static BundleState merged(final ResourceBundle leaf) throws Throwable {
+        final BundleState state = new BundleState();
+        state.setMerged(MergedBundles.merge(leaf, DevState.cacheGeneration(), PARENT, OWN_VALUE));
+        return state;
+    }
+
+    // root, fr and fr_CA like chain
+    private static Chained chain() {
+        final Chained root = new Chained(new Object[][]{{"a", "1"}, {"b", "2"}, {"c", "3"}}, null);
+        final Chained fr = new Chained(new Object[][]{{"b", "fr2"}, {"d", "fr4"}}, root);
+        return new Chained(new Object[][]{{"c", "ca3"}}, fr);
+    }
+
+    private static final class Chained extends ListResourceBundle {
+
+        private final Object[][] contents;
+
+        private Chained(final Object[][] contents, final ResourceBundle parent) {
+            this.contents = contents;
+            if (parent != null) {
+                setParent(parent);
+            }
+        }
+
+        private ResourceBundle parent() {
+            return parent;
+        }
+
+        @Override
+        protected Object[][] getContents() {
+            return contents;
+        }
+    }
+}
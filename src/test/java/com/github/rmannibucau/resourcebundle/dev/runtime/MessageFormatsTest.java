@@ -0,0 +1,45 @@
+package com.github.rmannibucau.resourcebundle.dev.runtime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.text.MessageFormat;
+
+import org.junit.jupiter.api.Test;
+
+class MessageFormatsTest {
+
+    private static final Object[] ARGUMENTS = {"Bob", 3};
+
+    @Test
+    void decorationWithBraceAndQuote() {
+        final String value = "Hello {0}, it''s {1,number,integer} o'''clock";
+        final String decorated = decorate("{l'", value, "'}");
+
+        assertEquals("{l'" + MessageFormat.format(value, ARGUMENTS) + "'}", MessageFormats.format(decorated, ARGUMENTS));
+    }
+
+    @Test
+    void decorationNotAroundTheValue() { // parsed decorated as the JDK does
+        final String value = "{0} and {1}";
+        final String decorated = value + " / " + value;
+        MessageFormats.onDecorated(value, decorated, null, PatternTemplate.parse("$value / $value"));
+
+        assertEquals("Bob and 3 / Bob and 3", MessageFormats.format(decorated, ARGUMENTS));
+    }
+
+    @Test
+    void invalidatedWithTheDecoratedValues() {
+        final String value = "Hello {0}";
+        final String decorated = decorate("'", value, "'");
+        assertEquals("'Hello Bob'", MessageFormats.format(decorated, ARGUMENTS));
+
+        DevState.invalidateCaches();
+        assertEquals("Hello {0}", MessageFormats.format(decorated, ARGUMENTS)); // the quotes are the JDK ones again
+    }
+
+    private static String decorate(final String prefix, final String value, final String suffix) {
+        final String decorated = prefix + value + suffix;
+        MessageFormats.onDecorated(value, decorated, null, PatternTemplate.parse(prefix + "$value" + suffix));
+        return decorated;
+    }
+}
@@ -0,0 +1,49 @@
+package com.github.rmannibucau.resourcebundle.dev.runtime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.text.MessageFormat;
+
+import org.junit.jupiter.api.Test;
+
+class PseudoLocalizerTest {
+
+    private final PseudoLocalizer noPadding = new PseudoLocalizer(0, "[", "]");
+
+    @Test
+    void elementsAreKept() {
+        assertEquals("[Ĥéļļö {0}, {1,number,integer} {2,choice,0#none|1#one {2}}]",
+                noPadding.format("Hello {0}, {1,number,integer} {2,choice,0#none|1#one {2}}", null));
+    }
+
+    @Test
+    void quotedTextIsLiteral() {
+        final String pseudo = noPadding.format("'{literal}' it''s {0} '{'{1}'}'", null);
+        assertEquals("['{ļîţéŕåļ}' îţ''š {0} '{'{1}'}']", pseudo);
+        assertEquals("[{ļîţéŕåļ} îţ'š a {b}]", MessageFormat.format(pseudo, "a", "b"));
+    }
+
+    @Test
+    void quotesInElements() { // the quoted brace does not close the element
+        final String pseudo = noPadding.format("{0,choice,0#'}'|1#one} left", null);
+        assertEquals("[{0,choice,0#'}'|1#one} ļéƒţ]", pseudo);
+        assertEquals("[one ļéƒţ]", MessageFormat.format(pseudo, 1));
+    }
+
+    @Test
+    void paddingAndBrackets() {
+        assertEquals("[]", new PseudoLocalizer(30, "[", "]").format("", null));
+        assertEquals("[åƀçð]", noPadding.format("abcd", null));
+        assertEquals("[åƀçð ~~]", new PseudoLocalizer(30, "[", "]").format("abcd", null)); // 1.2 rounded up
+        assertEquals("«åƀçðéƒĝĥîĵ ~~~»", new PseudoLocalizer(30, "«", "»").format("abcdefghij", null));
+        assertEquals("åƀ ~~", new PseudoLocalizer(100, "", "").format("ab", null));
+    }
+
+    @Test
+    void paddingCountsTheElements() {
+        final String value = "a {0}";
+        final String pseudo = new PseudoLocalizer(100, "[", "]").format(value, null);
+        assertEquals("[å {0} ~~~~~]", pseudo);
+        assertEquals(value.length() * 2 + 3, pseudo.length());
+    }
+}